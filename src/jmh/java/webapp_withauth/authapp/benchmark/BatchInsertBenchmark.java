@@ -0,0 +1,103 @@
+package webapp_withauth.authapp.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import webapp_withauth.authapp.AuthappApplication;
+import webapp_withauth.authapp.model.RefreshToken;
+import webapp_withauth.authapp.model.User;
+import webapp_withauth.authapp.repository.BatchInserts;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Insert throughput of refresh-token and user rows through JPA, {@code ROWS} per transaction.
+ * {@code batchSize=1} is the old behaviour, one statement and round trip per row as with identity
+ * ids; {@code 50} is the batched default. Runs on the in-memory H2 of the {@code test} profile,
+ * which hides most of the round-trip cost; for real numbers point it at PostgreSQL, e.g.
+ * {@code -Djmh.args="BatchInsertBenchmark -jvmArgs -Dspring.datasource.url=jdbc:postgresql://localhost/authdb_bench
+ * -jvmArgs -Dspring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    static final int ROWS = 500;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private BatchInserts batchInserts;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(AuthappApplication.class)
+                .profiles("test")
+                // Command-line arguments, as default properties would lose to application.yml
+                .run("--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "--spring.jpa.show-sql=false",
+                        "--server.port=0",
+                        // Per-statement SQL and transaction logging would be most of what gets measured
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql=WARN",
+                        "--logging.level.org.springframework.transaction=WARN");
+        int effective = context.getBean(EntityManagerFactory.class).unwrap(SessionFactoryImplementor.class)
+                .getSessionFactoryOptions().getJdbcBatchSize();
+        if (effective != batchSize) {
+            // Otherwise both params quietly measure the configured default
+            throw new IllegalStateException("batch_size override ignored: running with " + effective);
+        }
+        batchInserts = context.getBean(BatchInserts.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int insertRefreshTokens() {
+        List<RefreshToken> tokens = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            tokens.add(RefreshToken.builder()
+                    .username("benchuser")
+                    .tokenDigest(UUID.randomUUID().toString())
+                    .familyId(UUID.randomUUID().toString())
+                    .deviceId("bench-device")
+                    .expiry(LocalDateTime.now().plusDays(7))
+                    .build());
+        }
+        return batchInserts.persistAll(tokens);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int insertUsers() {
+        List<User> users = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            long n = sequence.incrementAndGet();
+            users.add(User.builder()
+                    .username("bench" + n)
+                    .email("bench" + n + "@example.com")
+                    .password("$2a$10$abcdefghijklmnopqrstuuJ5oJ1Yd7m3cQ6bV2ZlG2WZb1bXk5kQe")
+                    .role("USER")
+                    .enabled(true)
+                    .build());
+        }
+        return batchInserts.persistAll(users);
+    }
+}
@@ -0,0 +1,74 @@
+package webapp_withauth.authapp.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.VerifiedToken;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request token cost in {@code JwtAuthFilter}: the old path (extractUsername + isTokenValid, each
+ * deriving a key and building a parser) against the single-pass {@link JwtService#verify(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    static final String SECRET = "benchmarksecretthatisdefinitelylongerthan32chars";
+
+    private JwtService jwtService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = newJwtService();
+        UserDetails user = User.builder()
+                .username("benchuser")
+                .password("ignored")
+                .roles("USER")
+                .build();
+        token = jwtService.generateAccessToken(user);
+    }
+
+    static JwtService newJwtService() {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secret", SECRET);
+        service.init();
+        return service;
+    }
+
+    // What the filter did before: two full parses, each with a freshly derived key and parser.
+    @Benchmark
+    public boolean legacyExtractThenValidate() {
+        String username = legacyParse(token).getSubject();
+        Claims claims = legacyParse(token);
+        return username.equals(claims.getSubject())
+                && "access".equals(claims.get("token_type", String.class))
+                && claims.getExpiration().after(new Date());
+    }
+
+    @Benchmark
+    public VerifiedToken verifyOnce() {
+        return jwtService.verify(token);
+    }
+
+    private static Claims legacyParse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
@@ -0,0 +1,172 @@
+package webapp_withauth.authapp.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import webapp_withauth.authapp.AuthappApplication;
+import webapp_withauth.authapp.model.User;
+import webapp_withauth.authapp.repository.UserRepository;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Login, refresh and access-token validation over HTTP with {@code CONCURRENCY} requests in flight,
+ * in three modes: {@code platform} (Tomcat's 200 platform threads), {@code virtual} (virtual
+ * threads) and {@code refresh-offload} (the {@code refresh-offload} profile: refresh rotates on
+ * its own pool; login and validation are the same as {@code platform}). Besides throughput, each iteration prints the p50/p99 latency of the
+ * individual requests. BCrypt runs at cost 4 so the database, not hashing, dominates. Like
+ * {@link BatchInsertBenchmark} this uses the in-memory H2 of the {@code test} profile, where a query
+ * never waits on the network; point it at PostgreSQL the same way for numbers that reflect real
+ * round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+    static final int CONCURRENCY = 256;
+    static final String PASSWORD = "bench-password";
+
+    @Param({"platform", "virtual", "refresh-offload"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper json = new ObjectMapper();
+    private String baseUrl;
+    private final String[] refreshTokens = new String[CONCURRENCY];
+    private String accessToken;
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(AuthappApplication.class)
+                .profiles(mode.equals("refresh-offload") ? new String[] {"test", "refresh-offload"} : new String[] {"test"})
+                // Command-line arguments, as default properties would lose to application.yml
+                .run("--spring.threads.virtual.enabled=" + mode.equals("virtual"),
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--password-hashing.bcrypt.cost=4",
+                        // Every login is in flight at once; the default queue would answer most of them with 503
+                        "--password-hashing.executor.queue-capacity=" + CONCURRENCY,
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql=WARN",
+                        "--logging.level.org.springframework.transaction=WARN",
+                        "--logging.level.org.springframework.security=WARN");
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        context.getBean(UserRepository.class).save(User.builder()
+                .username("benchuser")
+                .email("benchuser@example.com")
+                .password(context.getBean(PasswordEncoder.class).encode(PASSWORD))
+                .role("USER")
+                .enabled(true)
+                .build());
+        List<JsonNode> logins = all(this::loginRequest);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            refreshTokens[i] = logins.get(i).get("refreshToken").asText();
+        }
+        accessToken = logins.get(0).get("accessToken").asText();
+        System.out.printf("%n%s: %d connections in flight, %.0f per core%n", mode, CONCURRENCY,
+                (double) CONCURRENCY / Runtime.getRuntime().availableProcessors());
+    }
+
+    @Setup(Level.Iteration)
+    public void clearLatencies() {
+        latencies.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies() {
+        List<Long> sorted = new ArrayList<>(latencies);
+        if (sorted.isEmpty()) {
+            return;
+        }
+        Collections.sort(sorted);
+        System.out.printf("%nper request: p50 %.1f ms, p99 %.1f ms (%d requests)%n",
+                sorted.get(sorted.size() / 2) / 1e6, sorted.get((int) (sorted.size() * 0.99)) / 1e6, sorted.size());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public List<JsonNode> login() {
+        return all(this::loginRequest);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public List<JsonNode> refresh() {
+        List<JsonNode> pairs = all(i -> post("/auth/refresh",
+                "{\"refreshToken\":\"" + refreshTokens[i] + "\",\"deviceId\":\"bench-" + i + "\"}"));
+        for (int i = 0; i < CONCURRENCY; i++) {
+            refreshTokens[i] = pairs.get(i).get("refreshToken").asText();
+        }
+        return pairs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public List<JsonNode> validate() {
+        return all(i -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/secure-endpoint"))
+                .header("Authorization", "Bearer " + accessToken)
+                .GET()
+                .build());
+    }
+
+    private HttpRequest loginRequest(int i) {
+        return post("/auth/login",
+                "{\"username\":\"benchuser\",\"password\":\"" + PASSWORD + "\",\"deviceId\":\"bench-" + i + "\"}");
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /** Sends {@code CONCURRENCY} requests at once and waits for every response. */
+    private List<JsonNode> all(IntFunction<HttpRequest> request) {
+        List<CompletableFuture<HttpResponse<String>>> inFlight = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            long start = System.nanoTime();
+            inFlight.add(client.sendAsync(request.apply(i), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((r, e) -> latencies.add(System.nanoTime() - start)));
+        }
+        List<JsonNode> bodies = new ArrayList<>(CONCURRENCY);
+        for (CompletableFuture<HttpResponse<String>> response : inFlight) {
+            HttpResponse<String> r = response.join();
+            if (r.statusCode() != 200) {
+                throw new IllegalStateException(r.uri().getPath() + " returned " + r.statusCode() + ": " + r.body());
+            }
+            try {
+                bodies.add(r.body().startsWith("{") ? json.readTree(r.body()) : json.getNodeFactory().textNode(r.body()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,63 @@
+package webapp_withauth.authapp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import webapp_withauth.authapp.security.JwtService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JwtService} operations on the login, refresh and per-request paths. Throughput sizes
+ * instances; SampleTime gives the p50/p99/p99.9 per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBenchmark {
+
+    private JwtService jwtService;
+    private UserDetails user;
+    private String accessToken;
+    private String refreshToken;
+
+    @Setup
+    public void setUp() {
+        jwtService = JwtVerificationBenchmark.newJwtService();
+        user = User.builder()
+                .username("benchuser")
+                .password("ignored")
+                .roles("USER")
+                .build();
+        accessToken = jwtService.generateAccessToken(user);
+        refreshToken = jwtService.generateRefreshToken(user);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtService.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public String generateRefreshToken() {
+        return jwtService.generateRefreshToken(user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(accessToken);
+    }
+
+    @Benchmark
+    public boolean isTokenValidAccess() {
+        return jwtService.isTokenValid(accessToken, user, JwtService.ACCESS_TOKEN_TYPE);
+    }
+
+    @Benchmark
+    public boolean isTokenValidRefresh() {
+        return jwtService.isTokenValid(refreshToken, user, JwtService.REFRESH_TOKEN_TYPE);
+    }
+}
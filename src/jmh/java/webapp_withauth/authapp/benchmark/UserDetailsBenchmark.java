@@ -0,0 +1,43 @@
+package webapp_withauth.authapp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.UserDetails;
+import webapp_withauth.authapp.model.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Spring Security {@link UserDetails} that {@code AuthController.login} and
+ * {@code refresh} derive from the stored user. Mostly interesting for its allocation rate
+ * under {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDetailsBenchmark {
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        user = User.builder()
+                .username("benchuser")
+                .email("bench@example.com")
+                .password("$2a$10$abcdefghijklmnopqrstuuJ5oJ1Yd7m3cQ6bV2ZlG2WZb1bXk5kQe")
+                .role("USER")
+                .enabled(true)
+                .build();
+    }
+
+    @Benchmark
+    public UserDetails buildUserDetails() {
+        return org.springframework.security.core.userdetails.User.builder()
+                .username(user.getUsername())
+                .password(user.getPassword())
+                .roles(user.getRole())
+                .build();
+    }
+}
@@ -0,0 +1,176 @@
+package webapp_withauth.authapp.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileCopyUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the versioned SQL scripts in {@code classpath:db/migration} before JPA starts; Hibernate
+ * only validates the result ({@code ddl-auto: validate}).
+ *
+ * <p>Scripts are named {@code V<version>__<description>.sql} and run once each, in version order,
+ * each in its own transaction. Applied versions are recorded in {@code schema_migration} with a
+ * checksum of the script; a script that changed after it was applied stops startup, so fixes go in a
+ * new version. On PostgreSQL, replicas starting together wait on an advisory lock.
+ *
+ * <p>Scripts that cannot be written portably go in a subdirectory named after the database
+ * ({@code postgresql}, {@code h2}) with one copy per database under the same version.
+ */
+@Component
+@Slf4j
+public class SchemaMigrations {
+
+    private static final String LOCATION = "classpath:db/migration/";
+    private static final String SCRIPTS = "V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    // Arbitrary, but fixed: every replica must take the same advisory lock
+    private static final long ADVISORY_LOCK_KEY = 0x617574686170704cL;
+
+    /** A script found on the classpath. */
+    record Migration(int version, String description, Resource script, String checksum) {
+    }
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SchemaMigrations(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Not the application's transaction manager: that one is JPA's, which is only built afterwards
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @PostConstruct
+    public void migrate() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS schema_migration (
+                    version INT PRIMARY KEY,
+                    description VARCHAR(200) NOT NULL,
+                    checksum VARCHAR(64) NOT NULL,
+                    installed_at TIMESTAMP(6) NOT NULL
+                )""");
+
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        boolean postgres = "PostgreSQL".equalsIgnoreCase(product);
+        List<Migration> migrations = load(vendor(product));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (postgres) {
+                // Held until this transaction ends; a replica that waited finds everything applied
+                jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + ADVISORY_LOCK_KEY + ")");
+            }
+            Map<Integer, String> applied = new HashMap<>();
+            jdbcTemplate.query("SELECT version, checksum FROM schema_migration",
+                    rs -> { applied.put(rs.getInt(1), rs.getString(2)); });
+
+            int count = 0;
+            for (Migration migration : migrations) {
+                String checksum = applied.get(migration.version());
+                if (checksum == null) {
+                    apply(migration);
+                    count++;
+                } else if (!checksum.equals(migration.checksum())) {
+                    throw new IllegalStateException("Migration V" + migration.version() + " ("
+                            + migration.script().getFilename() + ") changed after it was applied; "
+                            + "add a new version instead of editing it");
+                }
+            }
+            if (count > 0) {
+                log.info("Applied {} schema migration(s); schema is at V{}", count,
+                        migrations.get(migrations.size() - 1).version());
+            }
+        });
+    }
+
+    private void apply(Migration migration) {
+        log.info("Applying schema migration V{}: {}", migration.version(), migration.description());
+        // The transaction's connection, so the script and its schema_migration row commit together
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(migration.script(), StandardCharsets.UTF_8));
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        jdbcTemplate.update("INSERT INTO schema_migration (version, description, checksum, installed_at) "
+                + "VALUES (?, ?, ?, ?)", migration.version(), migration.description(), migration.checksum(),
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /** Name of the per-database script directory, e.g. {@code postgresql} for "PostgreSQL". */
+    static String vendor(String databaseProductName) {
+        return databaseProductName.toLowerCase(Locale.ROOT).replace(" ", "");
+    }
+
+    /** The shared scripts and those for {@code vendor}, in version order. */
+    static List<Migration> load(String vendor) {
+        List<Resource> resources = new ArrayList<>();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        try {
+            resources.addAll(List.of(resolver.getResources(LOCATION + SCRIPTS)));
+            resources.addAll(List.of(resolver.getResources(LOCATION + vendor + "/" + SCRIPTS)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot list schema migrations", e);
+        }
+
+        Map<Integer, Migration> byVersion = new TreeMap<>();
+        for (Resource resource : resources) {
+            Matcher name = FILE_NAME.matcher(Objects.requireNonNull(resource.getFilename()));
+            if (!name.matches()) {
+                throw new IllegalStateException("Unexpected migration file name: " + resource.getFilename());
+            }
+            Migration migration = new Migration(Integer.parseInt(name.group(1)), name.group(2).replace('_', ' '),
+                    resource, checksum(resource));
+            Migration clash = byVersion.put(migration.version(), migration);
+            if (clash != null) {
+                throw new IllegalStateException("Two migrations share version " + migration.version() + ": "
+                        + clash.script().getFilename() + " and " + resource.getFilename());
+            }
+        }
+        return List.copyOf(byVersion.values());
+    }
+
+    private static String checksum(Resource resource) {
+        try (InputStreamReader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            // Line endings depend on the checkout, not on the script
+            String script = FileCopyUtils.copyToString(reader).replace("\r\n", "\n");
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot read migration " + resource.getFilename(), e);
+        }
+    }
+
+    /** Makes the JPA EntityManagerFactory wait for the migrations, so validation sees the final schema. */
+    @Component
+    static class JpaAfterMigrations extends EntityManagerFactoryDependsOnPostProcessor {
+
+        JpaAfterMigrations() {
+            super(SchemaMigrations.class);
+        }
+    }
+}
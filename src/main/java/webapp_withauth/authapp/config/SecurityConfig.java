@@ -1,14 +1,24 @@
 package webapp_withauth.authapp.config;
 
 import lombok.RequiredArgsConstructor;
+import webapp_withauth.authapp.security.ClusterRateLimitFilter;
+import webapp_withauth.authapp.security.ClusterRateLimiter;
 import webapp_withauth.authapp.security.JwtAuthFilter;
+import webapp_withauth.authapp.security.LoginRateLimitFilter;
+import webapp_withauth.authapp.security.LoginRateLimiter;
+import webapp_withauth.authapp.security.LoginStageTimers;
+import webapp_withauth.authapp.security.PasswordEncoderFactory;
+import webapp_withauth.authapp.security.RehashingAuthenticationProvider;
+import webapp_withauth.authapp.service.PasswordRehashService;
 import webapp_withauth.authapp.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.*;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.*;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.*;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -16,6 +26,7 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
 
 @Configuration
 @RequiredArgsConstructor
@@ -33,6 +44,8 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                         .requestMatchers("/auth/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
+                        .requestMatchers("/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .userDetailsService(userService)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
@@ -40,13 +53,38 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordEncoderFactory passwordEncoderFactory) {
+        return passwordEncoderFactory.create();
     }
 
     @Bean
-    public AuthenticationManager authManager(AuthenticationConfiguration config) throws Exception {
-        return config.getAuthenticationManager();
+    public AuthenticationManager authManager(PasswordEncoder passwordEncoder, PasswordRehashService rehashService,
+            LoginStageTimers stageTimers) {
+        return new ProviderManager(
+                new RehashingAuthenticationProvider(userService, passwordEncoder, rehashService, stageTimers));
+    }
+
+    // Runs before Spring Security so throttled logins never reach the AuthenticationManager
+    @Bean
+    public FilterRegistrationBean<LoginRateLimitFilter> loginRateLimitFilter(LoginRateLimiter limiter,
+            ObjectMapper objectMapper,
+            @Value("${rate-limit.login.client-ip-header:}") String clientIpHeader) {
+        FilterRegistrationBean<LoginRateLimitFilter> registration = new FilterRegistrationBean<>(
+                new LoginRateLimitFilter(limiter, objectMapper.getFactory(), clientIpHeader));
+        registration.addUrlPatterns("/auth/login");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 10);
+        return registration;
+    }
+
+    // Cluster-wide limits on the public auth endpoints, after the per-node login buckets
+    @Bean
+    public FilterRegistrationBean<ClusterRateLimitFilter> clusterRateLimitFilter(ClusterRateLimiter limiter,
+            @Value("${rate-limit.login.client-ip-header:}") String clientIpHeader) {
+        FilterRegistrationBean<ClusterRateLimitFilter> registration = new FilterRegistrationBean<>(
+                new ClusterRateLimitFilter(limiter, clientIpHeader));
+        registration.setUrlPatterns(limiter.paths());
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 5);
+        return registration;
     }
 
     // returns response
@@ -0,0 +1,105 @@
+package webapp_withauth.authapp.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Watches for virtual threads that block while pinned to their carrier (inside {@code synchronized}
+ * or a native frame) when {@code spring.threads.virtual.enabled} is on. A pinned thread ties up one
+ * of the few carrier threads, so a pinning hot spot in the JDBC or mail stack can stall every
+ * request.
+ *
+ * <p>Streams the JFR {@code jdk.VirtualThreadPinned} event (pins longer than
+ * {@code virtual-threads.pinning.threshold}) in-process. Each pin is counted as
+ * {@code auth.vthread.pinned} with {@code path} jdbc, mail or other, from the innermost frame of a
+ * known package; the first pin at each distinct call site is logged with its stack.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    static final String EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Map<String, List<String>> PATHS = Map.of(
+            "jdbc", List.of("org.postgresql.", "org.h2.", "com.zaxxer.hikari.", "org.hibernate.",
+                    "org.springframework.jdbc.", "org.springframework.orm."),
+            "mail", List.of("jakarta.mail.", "org.eclipse.angus.mail.", "org.springframework.mail."));
+    private static final int LOGGED_STACK_DEPTH = 12;
+    private static final int MAX_LOGGED_SITES = 200;
+
+    private final Duration threshold;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(@Value("${virtual-threads.pinning.threshold:20ms}") Duration threshold,
+            MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Reporting virtual threads pinned for more than {} ms", threshold.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<String> frames = event.getStackTrace() == null ? List.of()
+                : event.getStackTrace().getFrames().stream()
+                        .filter(RecordedFrame::isJavaFrame)
+                        .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName())
+                        .toList();
+        String path = path(frames);
+        counters.computeIfAbsent(path, p -> Counter.builder("auth.vthread.pinned")
+                        .description("Virtual threads that blocked while pinned to their carrier")
+                        .tag("path", p)
+                        .register(meterRegistry))
+                .increment();
+
+        String site = frames.stream().limit(LOGGED_STACK_DEPTH).collect(Collectors.joining("\n\tat "));
+        if (loggedSites.size() < MAX_LOGGED_SITES && loggedSites.add(site)) {
+            log.warn("Virtual thread pinned for {} ms ({} path):\n\tat {}", event.getDuration().toMillis(), path, site);
+        }
+    }
+
+    /** jdbc, mail or other: the path of the innermost frame from a known package. */
+    static String path(List<String> frames) {
+        for (String frame : frames) {
+            for (Map.Entry<String, List<String>> entry : PATHS.entrySet()) {
+                if (entry.getValue().stream().anyMatch(frame::startsWith)) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return "other";
+    }
+}
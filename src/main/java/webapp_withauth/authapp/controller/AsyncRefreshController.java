@@ -0,0 +1,75 @@
+package webapp_withauth.authapp.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.bind.annotation.*;
+import webapp_withauth.authapp.model.RefreshRequest;
+import webapp_withauth.authapp.service.RefreshTokenService;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * {@code POST /auth/refresh} under the {@code refresh-offload} profile. The request goes async as
+ * soon as the body is read and the rotation runs on a small pool sized to the connection pool
+ * ({@code refresh.async.threads}), so a burst of refreshes waits in a queue instead of holding
+ * servlet threads. The rotation itself still blocks on JPA, just on a pool thread. Responses are the
+ * same as {@link RefreshController}'s (errors via {@link RefreshExceptionHandler}); a full queue
+ * ({@code queue-capacity}) answers 503 with {@code Retry-After}.
+ *
+ * <p>Meters: the standard {@code executor.*} meters under {@code name=refresh}.
+ */
+@RestController
+@RequestMapping("/auth")
+@Profile("refresh-offload")
+@Slf4j
+public class AsyncRefreshController {
+
+    private final RefreshTokenService refreshTokenService;
+    private final ThreadPoolExecutor pool;
+    private final String retryAfterSeconds;
+
+    public AsyncRefreshController(RefreshTokenService refreshTokenService,
+            @Value("${refresh.async.threads:10}") int threads,
+            @Value("${refresh.async.queue-capacity:1000}") int queueCapacity,
+            @Value("${refresh.async.retry-after:1s}") Duration retryAfter,
+            MeterRegistry meterRegistry) {
+        this.refreshTokenService = refreshTokenService;
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("refresh-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        ExecutorServiceMetrics.monitor(meterRegistry, pool, "refresh");
+        log.info("Refresh runs off the servlet thread: {} thread(s), queue capacity {}", threads, queueCapacity);
+    }
+
+    @PostMapping("/refresh")
+    public CompletableFuture<ResponseEntity<?>> refresh(@RequestBody RefreshRequest req, HttpServletRequest request) {
+        // Read request data now: the servlet request must not be touched from the pool thread
+        String ip = AuthController.clientIp(request);
+        String userAgent = request.getHeader("User-Agent");
+        try {
+            return CompletableFuture.supplyAsync(() -> RefreshController.body(
+                    refreshTokenService.rotate(req.getRefreshToken(), req.getDeviceId(), ip, userAgent)), pool);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .body("Server is busy, please retry shortly"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -1,26 +1,35 @@
 package webapp_withauth.authapp.controller;
 
-import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.*;
 import org.springframework.security.authentication.*;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import webapp_withauth.authapp.model.*;
 import webapp_withauth.authapp.repository.*;
+import webapp_withauth.authapp.security.AccessTokenRevocations;
 import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.LoginStageTimers;
+import webapp_withauth.authapp.security.PasswordHashingExecutor;
+import webapp_withauth.authapp.security.PasswordHashingExecutor.HashingCapacityExceededException;
 import webapp_withauth.authapp.service.EmailService;
+import webapp_withauth.authapp.service.RefreshTokenService;
+import webapp_withauth.authapp.service.UserService;
 
 import jakarta.servlet.http.HttpServletRequest;
 
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/auth")
@@ -35,33 +44,40 @@ public class AuthController {
     private final PendingUserRepository pendingUserRepo;
     private final PasswordResetTokenRepository resetTokenRepo;
     private final RefreshTokenRepository refreshTokenRepo;
+    private final AccessTokenRevocations accessTokenRevocations;
+    private final UserService userService;
+    private final PasswordHashingExecutor hashingExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final LoginStageTimers stageTimers;
+    private final RefreshTokenService refreshTokenService;
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody AuthRequest req, HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody AuthRequest req, HttpServletRequest request) {
+        // Read request data now: the servlet request must not be touched from the hashing thread
+        String ip = clientIp(request);
+        String userAgent = request.getHeader("User-Agent");
+        return hashingExecutor.submit(() -> authenticateAndIssue(req, ip, userAgent));
+    }
+
+    private ResponseEntity<?> authenticateAndIssue(AuthRequest req, String ip, String userAgent) {
         try {
             Authentication auth = authManager.authenticate(
                     new UsernamePasswordAuthenticationToken(req.getUsername(), req.getPassword()));
 
-            String username = auth.getName();
-
-            User user = userRepo.findByUsername(username)
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+            UserDetails principal = principalOf(auth);
 
-            UserDetails springUser = org.springframework.security.core.userdetails.User.builder()
-                    .username(user.getUsername())
-                    .password(user.getPassword())
-                    .roles(user.getRole())
-                    .build();
-
-            String accessToken = jwtService.generateAccessToken(springUser);
-            String refreshToken = jwtService.generateRefreshToken(springUser);
+            Timer.Sample signing = Timer.start();
+            String accessToken = jwtService.generateAccessToken(principal);
+            String refreshToken = jwtService.generateRefreshToken(principal);
+            signing.stop(stageTimers.sign());
 
             if (refreshToken == null || refreshToken.isBlank()) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body("Failed to generate refresh token");
             }
 
-            storeRefreshToken(user.getUsername(), refreshToken, req.getDeviceId(), request);
+            stageTimers.persist().record(() -> refreshTokenService.startFamily(principal.getUsername(), refreshToken,
+                    req.getDeviceId(), ip, userAgent));
 
             return ResponseEntity.ok(new AuthResponse(accessToken, refreshToken));
         } catch (AuthenticationException e) {
@@ -71,12 +87,23 @@ public class AuthController {
     }
 
     @PostMapping("/register")
-    @Transactional
-    public ResponseEntity<?> register(@RequestBody RegisterRequest request) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody RegisterRequest request) {
         if (!request.getPassword().equals(request.getConfirmPassword())) {
-            return ResponseEntity.badRequest().body("Passwords do not match");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Passwords do not match"));
+        }
+        // Turn away obvious duplicates before paying for a hash; createPendingUser re-checks in its transaction
+        if (userRepo.existsByUsername(request.getUsername()) || userRepo.existsByEmail(request.getEmail())) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Username or email already in use"));
         }
 
+        return hashingExecutor.submit(() -> {
+            String encodedPassword = encoder.encode(request.getPassword());
+            return transactionTemplate.execute(status -> createPendingUser(request, encodedPassword));
+        });
+    }
+
+    private ResponseEntity<?> createPendingUser(RegisterRequest request, String encodedPassword) {
         pendingUserRepo.deleteByEmail(request.getEmail());
 
         if (userRepo.existsByUsername(request.getUsername()) || userRepo.existsByEmail(request.getEmail())
@@ -92,7 +119,7 @@ public class AuthController {
         pendingUserRepo.save(PendingUser.builder()
                 .username(request.getUsername())
                 .email(request.getEmail())
-                .encodedPassword(encoder.encode(request.getPassword()))
+                .encodedPassword(encodedPassword)
                 .otp(otp)
                 .expiry(now.plusMinutes(5))
                 .otpSentAt(now)
@@ -106,50 +133,6 @@ public class AuthController {
         return ResponseEntity.ok("OTP sent to your email");
     }
 
-    @PostMapping("/refresh")
-    @Transactional
-    public ResponseEntity<?> refresh(@RequestBody RefreshRequest req, HttpServletRequest request) {
-        String refreshToken = req.getRefreshToken();
-        String username;
-        try {
-            username = jwtService.extractUsername(refreshToken);
-        } catch (JwtException | IllegalArgumentException e) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid refresh token");
-        }
-
-        RefreshToken stored = refreshTokenRepo.findByToken(refreshToken)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Refresh token not found"));
-
-        if (stored.isRevoked()
-                || stored.getExpiry().isBefore(LocalDateTime.now())
-                || !Objects.equals(stored.getDeviceId(), req.getDeviceId())) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid device context");
-        }
-
-        User user = userRepo.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
-
-        UserDetails springUser = org.springframework.security.core.userdetails.User.builder()
-                .username(user.getUsername())
-                .password(user.getPassword())
-                .roles(user.getRole())
-                .build();
-
-        if (!jwtService.isTokenValid(refreshToken, springUser, JwtService.REFRESH_TOKEN_TYPE)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid refresh token");
-        }
-
-        String newAccessToken = jwtService.generateAccessToken(springUser);
-        String newRefreshToken = jwtService.generateRefreshToken(springUser);
-
-        refreshTokenRepo.deleteByToken(refreshToken);
-        storeRefreshToken(user.getUsername(), newRefreshToken, req.getDeviceId(), request);
-
-        return ResponseEntity.ok(Map.of(
-                "accessToken", newAccessToken,
-                "refreshToken", newRefreshToken));
-    }
-
     @PostMapping("/verify")
     @Transactional
     public ResponseEntity<?> verify(@RequestParam String email, @RequestParam String otp) {
@@ -171,6 +154,8 @@ public class AuthController {
                 .role("USER")
                 .enabled(true)
                 .build());
+        // A login attempt before verification may have cached the username as unknown
+        userService.evict(pending.getUsername());
 
         pendingUserRepo.deleteByEmail(email);
 
@@ -217,25 +202,41 @@ public class AuthController {
     }
 
     @PostMapping("/reset-password")
-    @Transactional
-    public ResponseEntity<?> resetPassword(@RequestBody ResetPasswordRequest req) {
+    public CompletableFuture<ResponseEntity<?>> resetPassword(@RequestBody ResetPasswordRequest req) {
         if (req.getToken() == null || req.getToken().isBlank() || req.getNewPassword() == null || req.getNewPassword().isBlank()) {
-            return ResponseEntity.badRequest().body("Token and newPassword are required");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Token and newPassword are required"));
         }
 
         PasswordResetToken resetToken = resetTokenRepo.findByToken(req.getToken())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Invalid reset token"));
 
         if (resetToken.getExpiry().isBefore(LocalDateTime.now())) {
-            return ResponseEntity.status(HttpStatus.GONE).body("Reset token expired");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.GONE).body("Reset token expired"));
         }
 
         User user = userRepo.findByEmail(resetToken.getEmail())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
-        user.setPassword(encoder.encode(req.getNewPassword()));
-        userRepo.save(user);
+        return hashingExecutor.submit(() -> {
+            String encodedPassword = encoder.encode(req.getNewPassword());
+            return transactionTemplate.execute(status -> applyPasswordReset(req.getToken(), user, encodedPassword));
+        });
+    }
+
+    // The checks above ran before the queue wait; the token is consumed here, in the same transaction
+    // as the update, so a second request with the same token finds nothing left to consume
+    private ResponseEntity<?> applyPasswordReset(String token, User user, String encodedPassword) {
+        if (resetTokenRepo.consume(token, LocalDateTime.now()) == 0) {
+            return ResponseEntity.status(HttpStatus.GONE).body("Reset token expired or already used");
+        }
+        if (userRepo.updatePassword(user.getId(), encodedPassword) == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+        }
+        userService.evict(user.getUsername());
         refreshTokenRepo.deleteAllByUsername(user.getUsername());
+        accessTokenRevocations.revokeAll(user.getUsername());
         resetTokenRepo.deleteByEmail(user.getEmail());
 
         emailService.send(
@@ -283,9 +284,10 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    @Transactional
     public ResponseEntity<?> logout(@RequestBody RefreshRequest req) {
-        refreshTokenRepo.deleteByToken(req.getRefreshToken());
+        if (req.getRefreshToken() != null) {
+            refreshTokenService.revoke(req.getRefreshToken());
+        }
         return ResponseEntity.ok("Logged out");
     }
 
@@ -301,18 +303,31 @@ public class AuthController {
         return ResponseEntity.ok("Token is valid");
     }
 
-    private void storeRefreshToken(String username, String refreshToken, String deviceId, HttpServletRequest request) {
-        String ip = Optional.ofNullable(request.getHeader("X-Forwarded-For"))
-                .orElseGet(request::getRemoteAddr);
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<?> hashingBusy(HashingCapacityExceededException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, e.getRetryAfterSeconds())
+                .body("Server is busy, please retry shortly");
+    }
 
-        refreshTokenRepo.save(RefreshToken.builder()
-                .username(username)
-                .token(refreshToken)
-                .expiry(LocalDateTime.now().plusDays(7))
-                .revoked(false)
-                .ip(ip)
-                .userAgent(request.getHeader("User-Agent"))
-                .deviceId(deviceId)
-                .build());
+    // The provider hands back the UserDetails it loaded; only a foreign principal costs another lookup
+    private UserDetails principalOf(Authentication auth) {
+        if (auth.getPrincipal() instanceof UserDetails userDetails) {
+            return userDetails;
+        }
+        return loadPrincipal(auth.getName());
+    }
+
+    private UserDetails loadPrincipal(String username) {
+        try {
+            return userService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found");
+        }
+    }
+
+    static String clientIp(HttpServletRequest request) {
+        return Optional.ofNullable(request.getHeader("X-Forwarded-For"))
+                .orElseGet(request::getRemoteAddr);
     }
 }
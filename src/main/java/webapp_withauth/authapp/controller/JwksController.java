@@ -0,0 +1,49 @@
+package webapp_withauth.authapp.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import webapp_withauth.authapp.security.SigningKeyRing;
+
+import java.time.Duration;
+
+// Public keys for verifying access tokens locally; empty while tokens are HMAC-signed
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+
+    private static final SigningKeyRing.Jwks EMPTY = new SigningKeyRing.Jwks("{\"keys\":[]}", "\"empty\"");
+
+    private final ObjectProvider<SigningKeyRing> keyRing;
+
+    @Value("${jwt.signing.jwks-max-age:5m}")
+    private Duration maxAge;
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<String> jwks(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SigningKeyRing ring = keyRing.getIfAvailable();
+        SigningKeyRing.Jwks jwks = ring != null ? ring.jwks() : EMPTY;
+        CacheControl cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+
+        if (jwks.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(jwks.etag())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(jwks.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jwks.json());
+    }
+}
@@ -0,0 +1,35 @@
+package webapp_withauth.authapp.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import webapp_withauth.authapp.model.RefreshRequest;
+import webapp_withauth.authapp.service.RefreshTokenService;
+import webapp_withauth.authapp.service.RefreshTokenService.TokenPair;
+
+import java.util.Map;
+
+/** {@code POST /auth/refresh} on the servlet thread; see {@link AsyncRefreshController} for the alternative. */
+@RestController
+@RequestMapping("/auth")
+@Profile("!refresh-offload")
+@RequiredArgsConstructor
+public class RefreshController {
+
+    private final RefreshTokenService refreshTokenService;
+
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshRequest req, HttpServletRequest request) {
+        TokenPair pair = refreshTokenService.rotate(req.getRefreshToken(), req.getDeviceId(),
+                AuthController.clientIp(request), request.getHeader("User-Agent"));
+        return body(pair);
+    }
+
+    static ResponseEntity<?> body(TokenPair pair) {
+        return ResponseEntity.ok(Map.of(
+                "accessToken", pair.accessToken(),
+                "refreshToken", pair.refreshToken()));
+    }
+}
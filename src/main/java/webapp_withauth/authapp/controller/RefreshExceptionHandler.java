@@ -0,0 +1,26 @@
+package webapp_withauth.authapp.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import webapp_withauth.authapp.service.RefreshTokenService.InvalidRefreshTokenException;
+import webapp_withauth.authapp.service.RefreshTokenService.RotationInProgressException;
+
+/** Rotation failures of {@code POST /auth/refresh}, whichever of the two controllers serves it. */
+@RestControllerAdvice(assignableTypes = {RefreshController.class, AsyncRefreshController.class})
+public class RefreshExceptionHandler {
+
+    @ExceptionHandler(InvalidRefreshTokenException.class)
+    public ResponseEntity<?> invalidRefreshToken(InvalidRefreshTokenException e) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+    }
+
+    @ExceptionHandler(RotationInProgressException.class)
+    public ResponseEntity<?> rotationInProgress(RotationInProgressException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,37 @@
+package webapp_withauth.authapp.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import webapp_withauth.authapp.service.UserImportService;
+import webapp_withauth.authapp.service.UserImportService.Format;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/admin/users")
+@RequiredArgsConstructor
+public class UserImportController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private final UserImportService importService;
+
+    // The body is streamed straight from the request, never buffered whole
+    @PostMapping(value = "/import", consumes = { MediaType.APPLICATION_NDJSON_VALUE, "text/csv" })
+    public ResponseEntity<UserImportService.Result> importUsers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            HttpServletRequest request) throws IOException {
+        Format format = TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(contentType)) ? Format.CSV : Format.NDJSON;
+        return ResponseEntity.ok(importService.importUsers(request.getInputStream(), format));
+    }
+
+    // Only raised for a CSV header without the required columns; bad rows are reported in the result
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> badInput(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
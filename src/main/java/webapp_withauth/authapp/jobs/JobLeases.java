@@ -0,0 +1,157 @@
+package webapp_withauth.authapp.jobs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import webapp_withauth.authapp.repository.JobLeaseRepository;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs a scheduled job on one node of the cluster per interval.
+ *
+ * <p>Every replica keeps its {@code @Scheduled} trigger; on each tick the job waits a random
+ * {@code jobs.lease.jitter} (on the task scheduler, not in the calling thread) and then tries to
+ * take its row in {@code job_lease}. Only the node that gets the lease runs the job. The lease is
+ * not released after the run: it lasts one interval minus the jitter, so the other replicas skip
+ * the rest of that interval and the next tick anywhere finds it free. If the holder dies, its lease
+ * simply runs out and another node takes the next tick. Expiry is decided by the database's clock,
+ * so clock skew between replicas cannot let two of them hold the lease at once.
+ *
+ * <p>Meters, per {@code job}: {@code auth.job.lease.held} (1 while this node holds the lease),
+ * {@code auth.job.last.duration} and {@code auth.job.last.rows} (of this node's last run) and
+ * {@code auth.job.runs} by {@code outcome} (ran, skipped, failed).
+ */
+@Component
+@Slf4j
+public class JobLeases {
+
+    private final class JobState {
+        final AtomicLong leasedUntilMillis = new AtomicLong();
+        final AtomicLong lastDurationNanos = new AtomicLong();
+        final AtomicLong lastRows = new AtomicLong();
+        final Counter ran;
+        final Counter skipped;
+        final Counter failed;
+
+        JobState(String job) {
+            Gauge.builder("auth.job.lease.held", () -> leasedUntilMillis.get() > clock.millis() ? 1 : 0)
+                    .description("Whether this node holds the job's lease")
+                    .tag("job", job)
+                    .register(meterRegistry);
+            TimeGauge.builder("auth.job.last.duration", lastDurationNanos, TimeUnit.NANOSECONDS, AtomicLong::get)
+                    .description("Duration of this node's last run of the job")
+                    .tag("job", job)
+                    .register(meterRegistry);
+            Gauge.builder("auth.job.last.rows", lastRows, AtomicLong::get)
+                    .description("Rows affected by this node's last run of the job")
+                    .tag("job", job)
+                    .register(meterRegistry);
+            ran = runs(job, "ran");
+            skipped = runs(job, "skipped");
+            failed = runs(job, "failed");
+        }
+
+        private Counter runs(String job, String outcome) {
+            return Counter.builder("auth.job.runs")
+                    .description("Scheduled job ticks by outcome")
+                    .tag("job", job)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+
+    private final JobLeaseRepository repo;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Duration jitter;
+    private final Clock clock;
+    private final String owner;
+
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JobLeases(JobLeaseRepository repo,
+            TaskScheduler taskScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${jobs.lease.jitter:5s}") Duration jitter) {
+        this(repo, taskScheduler, meterRegistry, jitter, Clock.systemDefaultZone());
+    }
+
+    JobLeases(JobLeaseRepository repo, TaskScheduler taskScheduler, MeterRegistry meterRegistry, Duration jitter,
+            Clock clock) {
+        this.repo = repo;
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+        this.jitter = jitter;
+        this.clock = clock;
+        this.owner = hostName() + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Schedules one attempt at {@code task}, after a random jitter, if no other node has run
+     * {@code job} in the current interval. The task returns the number of rows it touched.
+     */
+    public void runExclusive(String job, Duration interval, IntSupplier task) {
+        long delayMillis = jitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+        if (delayMillis == 0) {
+            runIfLeased(job, interval, task);
+            return;
+        }
+        taskScheduler.schedule(() -> runIfLeased(job, interval, task), Instant.now().plusMillis(delayMillis));
+    }
+
+    /** Runs {@code task} now if this node can take the lease; returns whether it ran. */
+    boolean runIfLeased(String job, Duration interval, IntSupplier task) {
+        JobState state = jobs.computeIfAbsent(job, JobState::new);
+
+        // Short of a full interval, so the next tick on any node finds the lease free
+        Duration leaseLength = interval.minus(jitter);
+        if (leaseLength.compareTo(interval.dividedBy(2)) < 0) {
+            leaseLength = interval.dividedBy(2);
+        }
+        if (!repo.tryAcquire(job, owner, leaseLength)) {
+            state.skipped.increment();
+            log.debug("Skipping {}: another node holds its lease", job);
+            return false;
+        }
+        state.leasedUntilMillis.set(clock.millis() + leaseLength.toMillis());
+
+        long start = System.nanoTime();
+        try {
+            state.lastRows.set(task.getAsInt());
+            state.ran.increment();
+        } catch (RuntimeException e) {
+            state.failed.increment();
+            log.error("Scheduled job {} failed", job, e);
+        } finally {
+            state.lastDurationNanos.set(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown-host";
+        }
+    }
+}
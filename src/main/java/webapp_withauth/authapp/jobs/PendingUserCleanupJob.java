@@ -2,6 +2,7 @@ package webapp_withauth.authapp.jobs;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -9,6 +10,7 @@ import webapp_withauth.authapp.repository.PasswordResetTokenRepository;
 import webapp_withauth.authapp.repository.PendingUserRepository;
 import webapp_withauth.authapp.repository.RefreshTokenRepository;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 @Component
@@ -19,28 +21,91 @@ public class PendingUserCleanupJob {
     private final PendingUserRepository pendingUserRepo;
     private final PasswordResetTokenRepository resetTokenRepo;
     private final RefreshTokenRepository refreshTokenRepo;
+    private final JobLeases jobLeases;
+    private final RefreshTokenPartitions refreshTokenPartitions;
+
+    // Every replica ticks; JobLeases lets one of them run each job per interval
+    private static final long PENDING_USERS_INTERVAL_MS = 10 * 60 * 1000;
+    private static final long TOKENS_INTERVAL_MS = 5 * 60 * 1000;
+
+    // Refresh tokens pile up (one row per rotation), so they are deleted in chunks, each in its own
+    // short transaction, with a pause in between; whatever is left after the budget waits for the next run
+    @Value("${cleanup.refresh-tokens.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    @Value("${cleanup.refresh-tokens.time-budget:30s}")
+    private Duration timeBudget = Duration.ofSeconds(30);
+
+    @Value("${cleanup.refresh-tokens.chunk-pause:100ms}")
+    private Duration chunkPause = Duration.ofMillis(100);
 
     // Run every 10 minutes
-    @Scheduled(fixedRate = 10 * 60 * 1000)
+    @Scheduled(fixedRate = PENDING_USERS_INTERVAL_MS)
     public void cleanupExpiredPendingUsers() {
-        LocalDateTime now = LocalDateTime.now();
+        jobLeases.runExclusive("pending-user-cleanup", Duration.ofMillis(PENDING_USERS_INTERVAL_MS),
+                this::deleteExpiredPendingUsers);
+    }
+
+    @Scheduled(fixedRate = TOKENS_INTERVAL_MS)
+    public void cleanExpiredResetTokens() {
+        jobLeases.runExclusive("reset-token-cleanup", Duration.ofMillis(TOKENS_INTERVAL_MS),
+                this::deleteExpiredResetTokens);
+    }
+
+    @Scheduled(fixedRate = TOKENS_INTERVAL_MS)
+    public void cleanExpiredRefreshTokens() {
+        jobLeases.runExclusive("refresh-token-cleanup", Duration.ofMillis(TOKENS_INTERVAL_MS),
+                this::deleteExpiredRefreshTokens);
+    }
 
-        // Log count of expired users only, not all
-        long count = pendingUserRepo.countExpired(now);
-        pendingUserRepo.deleteExpired(now);
+    int deleteExpiredPendingUsers() {
+        int count = pendingUserRepo.deleteExpired(LocalDateTime.now());
 
         if (count > 0) {
             log.info("🧹 Deleted {} expired pending user registrations", count);
         }
+        return count;
     }
 
-    @Scheduled(fixedRate = 5 * 60 * 1000)
-    public void cleanExpiredResetTokens() {
-        resetTokenRepo.deleteAllByExpiryBefore(LocalDateTime.now());
+    int deleteExpiredResetTokens() {
+        int count = resetTokenRepo.deleteAllByExpiryBefore(LocalDateTime.now());
+
+        if (count > 0) {
+            log.info("🧹 Deleted {} expired password reset tokens", count);
+        }
+        return count;
     }
 
-    @Scheduled(fixedRate = 5 * 60 * 1000)
-    public void cleanExpiredRefreshTokens() {
-        refreshTokenRepo.deleteAllByExpiryBefore(LocalDateTime.now());
+    int deleteExpiredRefreshTokens() {
+        if (refreshTokenPartitions.isActive()) {
+            // Expired tokens leave with their partition
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        int total = 0;
+
+        while (true) {
+            int deleted = refreshTokenRepo.deleteExpiredChunk(now, chunkSize);
+            total += deleted;
+            if (deleted < chunkSize) {
+                break;
+            }
+            if (System.nanoTime() >= deadline) {
+                log.info("Refresh token cleanup hit its {} budget; the rest is left for the next run", timeBudget);
+                break;
+            }
+            try {
+                Thread.sleep(chunkPause.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (total > 0) {
+            log.info("🧹 Deleted {} expired refresh tokens", total);
+        }
+        return total;
     }
-}
\ No newline at end of file
+}
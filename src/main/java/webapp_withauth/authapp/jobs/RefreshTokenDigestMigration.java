@@ -0,0 +1,111 @@
+package webapp_withauth.authapp.jobs;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import webapp_withauth.authapp.security.TokenDigests;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online conversion of {@code refresh_token} rows written before tokens were stored as digests.
+ *
+ * <p>Such rows still carry the raw JWT in the legacy {@code token} column and no
+ * {@code token_digest}. The schema change (the digest column, NULL allowed in the legacy one) is
+ * migration V0, applied before the application serves anything. Only the rows are converted here:
+ * after startup, in small batches (digest filled in, raw token cleared), while the application
+ * serves traffic. A refresh or logout that arrives for a row not yet converted converts that row on
+ * the spot through {@link #migrateIfLegacy(String)}, so no session is lost; the legacy column is
+ * looked up when the bean is created, so this works before the background pass has started. Once every row is
+ * converted the legacy column is dropped if {@code refresh-tokens.digest-migration.drop-legacy-column}
+ * is set; leave it off until no replica of an older version is still writing raw tokens.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenDigestMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${refresh-tokens.digest-migration.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${refresh-tokens.digest-migration.drop-legacy-column:false}")
+    private boolean dropLegacyColumn;
+
+    private volatile boolean legacyColumnPresent;
+
+    @PostConstruct
+    void detect() {
+        legacyColumnPresent = detectLegacyColumn();
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        run();
+    }
+
+    /** Converts every legacy row; returns the number converted. */
+    public int run() {
+        legacyColumnPresent = detectLegacyColumn();
+        if (!legacyColumnPresent) {
+            return 0;
+        }
+
+        int converted = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, token FROM refresh_token WHERE token IS NOT NULL LIMIT ?", batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            jdbcTemplate.batchUpdate(
+                    "UPDATE refresh_token SET token_digest = ?, token = NULL WHERE id = ? AND token = ?",
+                    rows, rows.size(), (ps, row) -> {
+                        String token = (String) row.get("token");
+                        ps.setString(1, TokenDigests.sha256Hex(token));
+                        ps.setLong(2, ((Number) row.get("id")).longValue());
+                        ps.setString(3, token);
+                    });
+            converted += rows.size();
+        }
+        if (converted > 0) {
+            log.info("Converted {} refresh token(s) to digests", converted);
+        }
+
+        if (dropLegacyColumn) {
+            jdbcTemplate.execute("ALTER TABLE refresh_token DROP COLUMN token");
+            legacyColumnPresent = false;
+            log.info("Dropped legacy refresh_token.token column");
+        }
+        return converted;
+    }
+
+    /**
+     * Converts the row holding this raw token, if there is one. Lets refresh and logout succeed for
+     * sessions whose row the background pass has not reached yet.
+     */
+    public boolean migrateIfLegacy(String token) {
+        if (!legacyColumnPresent || token == null) {
+            return false;
+        }
+        return jdbcTemplate.update("UPDATE refresh_token SET token_digest = ?, token = NULL WHERE token = ?",
+                TokenDigests.sha256Hex(token), token) > 0;
+    }
+
+    private boolean detectLegacyColumn() {
+        Integer count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.columns
+                WHERE LOWER(table_name) = 'refresh_token' AND LOWER(column_name) = 'token'""", Integer.class);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,204 @@
+package webapp_withauth.authapp.jobs;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Optional PostgreSQL storage mode for {@code refresh_token}: the table is range-partitioned by
+ * {@code expiry}, one partition per day, so expired tokens go away by dropping a whole partition
+ * instead of row-by-row DELETEs.
+ *
+ * <p>With {@code refresh-tokens.partitioning.enabled}, the plain table created by the migrations is
+ * converted once at startup, under an exclusive lock: rows are copied into a partitioned table that
+ * replaces it. Once the table is partitioned, startup only reads the catalog and takes no lock. PostgreSQL requires the partition key in every unique index, so the primary key
+ * becomes {@code (id, expiry)} and the digest index {@code (token_digest, expiry)}; the JPA mapping
+ * is unchanged. A maintenance task (one node at a time, via {@link JobLeases}) keeps partitions
+ * {@code premake-days} ahead, which must exceed the refresh-token lifetime, and drops partitions
+ * whose day has passed. Row-level expiry cleanup is skipped while partitioning is active.
+ *
+ * <p>On any other database (H2 in tests) the setting is ignored and the plain table is kept.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class RefreshTokenPartitions {
+
+    private static final String PARTITION_PREFIX = "refresh_token_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLeases jobLeases;
+    private final boolean enabled;
+    private final int premakeDays;
+    private final Duration maintenanceInterval;
+
+    private volatile boolean active;
+
+    public RefreshTokenPartitions(JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            JobLeases jobLeases,
+            @Value("${refresh-tokens.partitioning.enabled:false}") boolean enabled,
+            @Value("${refresh-tokens.partitioning.premake-days:10}") int premakeDays,
+            @Value("${refresh-tokens.partitioning.maintenance-interval:1h}") Duration maintenanceInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLeases = jobLeases;
+        this.enabled = enabled;
+        this.premakeDays = premakeDays;
+        this.maintenanceInterval = maintenanceInterval;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(product)) {
+            log.info("Refresh-token partitioning needs PostgreSQL; keeping the plain table on {}", product);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> convertIfNeeded());
+        active = true;
+        maintain();
+    }
+
+    /** Whether expired refresh tokens are removed by dropping partitions rather than by DELETE. */
+    public boolean isActive() {
+        return active;
+    }
+
+    @Scheduled(fixedDelayString = "${refresh-tokens.partitioning.maintenance-interval:1h}",
+            initialDelayString = "${refresh-tokens.partitioning.maintenance-interval:1h}")
+    public void scheduledMaintenance() {
+        if (active) {
+            jobLeases.runExclusive("refresh-token-partitions", maintenanceInterval, this::maintain);
+        }
+    }
+
+    /** Creates the partitions for the coming days and drops past ones; returns the number dropped. */
+    int maintain() {
+        LocalDate today = LocalDate.now();
+        for (int day = 0; day <= premakeDays; day++) {
+            createPartition(today.plusDays(day));
+        }
+
+        int dropped = 0;
+        for (String partition : partitions()) {
+            LocalDate day = partitionDay(partition);
+            // A partition only holds tokens that expired before its upper bound, i.e. by the end of its day
+            if (day != null && day.isBefore(today)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            log.info("🧹 Dropped {} expired refresh-token partition(s)", dropped);
+        }
+        return dropped;
+    }
+
+    private void convertIfNeeded() {
+        // Checked without a lock first: the exclusive lock would stall every refresh on each restart
+        if (isPartitioned()) {
+            return;
+        }
+        // Serializes replicas starting together; the lock follows the table through the rename
+        jdbcTemplate.execute("LOCK TABLE refresh_token IN ACCESS EXCLUSIVE MODE");
+        if (isPartitioned()) {
+            return;
+        }
+
+        log.info("Converting refresh_token to a table partitioned by expiry day");
+        // Ids keep coming from refresh_token_seq, which does not belong to either table
+        jdbcTemplate.execute("CREATE TABLE refresh_token_partitioned (LIKE refresh_token INCLUDING DEFAULTS) "
+                + "PARTITION BY RANGE (expiry)");
+        jdbcTemplate.execute("ALTER TABLE refresh_token_partitioned ALTER COLUMN expiry SET NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE refresh_token_partitioned ADD PRIMARY KEY (id, expiry)");
+
+        // Partitions from today through the days ahead, or through the latest expiry if that is later
+        LocalDate today = LocalDate.now();
+        LocalDate latest = jdbcTemplate.queryForObject("SELECT CAST(MAX(expiry) AS DATE) FROM refresh_token",
+                LocalDate.class);
+        LocalDate through = today.plusDays(premakeDays);
+        if (latest != null && latest.isAfter(through)) {
+            through = latest;
+        }
+        for (LocalDate day = today; !day.isAfter(through); day = day.plusDays(1)) {
+            createPartition("refresh_token_partitioned", day);
+        }
+
+        // Rows that expired before today are not worth copying
+        int copied = jdbcTemplate.update(
+                "INSERT INTO refresh_token_partitioned SELECT * FROM refresh_token WHERE expiry >= CURRENT_DATE");
+
+        jdbcTemplate.execute("DROP TABLE refresh_token");
+        jdbcTemplate.execute("ALTER TABLE refresh_token_partitioned RENAME TO refresh_token");
+
+        // Built after the copy, under the names the schema migrations use
+        jdbcTemplate.execute("CREATE UNIQUE INDEX uk_refresh_token_digest ON refresh_token (token_digest, expiry)");
+        jdbcTemplate.execute("CREATE INDEX idx_refresh_token_family ON refresh_token (family_id)");
+        jdbcTemplate.execute("CREATE INDEX idx_refresh_token_expiry ON refresh_token (expiry)");
+        jdbcTemplate.execute("CREATE INDEX idx_refresh_token_username ON refresh_token (username)");
+        log.info("refresh_token partitioned; {} live row(s) copied", copied);
+    }
+
+    private boolean isPartitioned() {
+        List<String> kinds = jdbcTemplate.queryForList("""
+                SELECT CAST(c.relkind AS TEXT) FROM pg_class c
+                WHERE c.relname = 'refresh_token' AND c.relnamespace = CAST(current_schema() AS regnamespace)""",
+                String.class);
+        return kinds.contains("p");
+    }
+
+    private void createPartition(LocalDate day) {
+        createPartition("refresh_token", day);
+    }
+
+    private void createPartition(String parent, LocalDate day) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF " + parent
+                + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+    }
+
+    private List<String> partitions() {
+        return partitions("refresh_token");
+    }
+
+    private List<String> partitions(String parent) {
+        return jdbcTemplate.queryForList("""
+                SELECT child.relname FROM pg_inherits i
+                JOIN pg_class child ON child.oid = i.inhrelid
+                JOIN pg_class parent ON parent.oid = i.inhparent
+                WHERE parent.relname = ?""", String.class, parent);
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + PARTITION_SUFFIX.format(day);
+    }
+
+    /** Day covered by a partition created here, or {@code null} for any other table. */
+    static LocalDate partitionDay(String partition) {
+        if (!partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
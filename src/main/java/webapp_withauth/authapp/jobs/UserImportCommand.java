@@ -0,0 +1,62 @@
+package webapp_withauth.authapp.jobs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import webapp_withauth.authapp.service.UserImportService;
+import webapp_withauth.authapp.service.UserImportService.Format;
+import webapp_withauth.authapp.service.UserImportService.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Command-line form of the bulk user import: starting the application with
+ * {@code --import-users=<file>} imports the file and exits. The format follows the extension
+ * ({@code .csv}, anything else is NDJSON) unless {@code --import-format=csv|ndjson} is given. The
+ * exit code is 0, or 2 when some rows were skipped as duplicate or invalid.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserImportCommand implements ApplicationRunner {
+
+    static final String FILE_OPTION = "import-users";
+    static final String FORMAT_OPTION = "import-format";
+
+    private final UserImportService importService;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!args.containsOption(FILE_OPTION)) {
+            return;
+        }
+        Path file = Path.of(args.getOptionValues(FILE_OPTION).get(0));
+        Format format = format(file, args.containsOption(FORMAT_OPTION) ? args.getOptionValues(FORMAT_OPTION).get(0) : null);
+        log.info("Importing users from {} as {}", file, format);
+
+        Result result;
+        try (InputStream in = Files.newInputStream(file)) {
+            result = importService.importUsers(in, format);
+        }
+        result.problems().forEach(problem -> log.warn("Skipped {}", problem));
+
+        int exitCode = result.duplicates() + result.invalid() > 0 ? 2 : 0;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    static Format format(Path file, String option) {
+        if (option != null) {
+            return Format.valueOf(option.toUpperCase(Locale.ROOT));
+        }
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? Format.CSV : Format.NDJSON;
+    }
+}
@@ -0,0 +1,30 @@
+package webapp_withauth.authapp.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cluster-wide lease on one scheduled job. Rows are only written by {@code JobLeaseRepository}'s
+ * conditional updates; the entity exists so the schema is managed with the rest of the tables.
+ */
+@Entity
+@Table(name = "job_lease")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JobLease {
+
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    // "<host>:<random id>" of the node that took the lease
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private LocalDateTime leasedUntil;
+}
@@ -0,0 +1,48 @@
+package webapp_withauth.authapp.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One EC key pair of the access-token signing key ring. Shared through the database so every
+ * replica signs with, verifies against and publishes the same keys.
+ */
+@Entity
+@Table(name = "jwt_signing_key")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JwtSigningKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String kid;
+
+    @Column(nullable = false, length = 16)
+    private String algorithm;
+
+    // Base64 X.509 SubjectPublicKeyInfo
+    @Column(nullable = false, length = 512)
+    private String publicKey;
+
+    // Base64 PKCS#8, AES-GCM encrypted with a key derived from jwt.secret
+    @Column(nullable = false, length = 1024)
+    private String privateKey;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Published in the JWKS from createdAt, used for signing from activatesAt
+    @Column(nullable = false)
+    private LocalDateTime activatesAt;
+
+    // No longer accepted or published after this
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 public class PendingUser {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pending_users_seq")
+    @SequenceGenerator(name = "pending_users_seq", sequenceName = "pending_users_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -0,0 +1,31 @@
+package webapp_withauth.authapp.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cluster-wide hit count for one rate-limit key in one fixed window. Rows are only ever written by
+ * {@code RateLimitCounterRepository}'s atomic upsert; the entity exists so the schema is managed
+ * with the rest of the tables.
+ */
+@Entity
+@Table(name = "rate_limit_counter", indexes = @Index(name = "idx_rate_limit_counter_window", columnList = "windowStart"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RateLimitCounter {
+
+    // "<scope>:<client key>@<window start, epoch seconds>"
+    @Id
+    @Column(length = 255)
+    private String id;
+
+    @Column(nullable = false)
+    private LocalDateTime windowStart;
+
+    @Column(nullable = false)
+    private long hits;
+}
@@ -9,16 +9,23 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Table(indexes = {
+        @Index(name = "idx_refresh_token_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_token_expiry", columnList = "expiry")
+})
 public class RefreshToken {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_token_seq")
+    @SequenceGenerator(name = "refresh_token_seq", sequenceName = "refresh_token_seq", allocationSize = 100)
     private Long id;
 
     private String username;
 
-    @Column(nullable = false, unique = true)
-    private String token;
+    // Hex SHA-256 of the refresh JWT; the token itself is never stored. Nullable only so the
+    // column can be added to tables that still hold rows from before digests were introduced.
+    @Column(name = "token_digest", unique = true, length = 64)
+    private String tokenDigest;
 
     private LocalDateTime expiry;
 
@@ -29,4 +36,14 @@ public class RefreshToken {
     private String userAgent;
 
     private String deviceId;
+
+    // Shared by every token descended from one login; reusing a retired token revokes the family
+    @Column(name = "family_id", length = 36)
+    private String familyId;
+
+    // Set when the token is exchanged for a new one; the row is kept so later reuse can be detected
+    private LocalDateTime rotatedAt;
+
+    @Version
+    private Long version;
 }
\ No newline at end of file
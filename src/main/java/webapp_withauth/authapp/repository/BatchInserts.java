@@ -0,0 +1,43 @@
+package webapp_withauth.authapp.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Persists many new entities in one transaction, flushing and clearing the persistence context
+ * every {@code hibernate.jdbc.batch_size} entities. Each flush goes out as one JDBC batch per table
+ * (ids come from pooled sequences, so Hibernate does not need to insert row by row to learn them),
+ * and clearing keeps the context, and memory, from growing with the input.
+ */
+@Repository
+public class BatchInserts {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize = 50;
+
+    /** Inserts {@code entities}; returns how many there were. The entities are detached afterwards. */
+    @Transactional
+    public <T> int persistAll(Iterable<T> entities) {
+        int count = 0;
+        for (T entity : entities) {
+            entityManager.persist(entity);
+            if (++count % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return count;
+    }
+
+    int batchSize() {
+        return batchSize;
+    }
+}
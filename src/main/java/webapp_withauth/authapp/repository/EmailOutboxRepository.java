@@ -0,0 +1,105 @@
+package webapp_withauth.authapp.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Queue operations on {@code email_outbox}. Rows are claimed with {@code FOR UPDATE SKIP LOCKED},
+ * so dispatchers on several replicas take disjoint batches without waiting on each other. A claim
+ * only pushes {@code next_attempt_at} out by a lease and commits; sending happens outside any
+ * transaction, and a row whose sender died becomes due again when the lease runs out. Delivery is
+ * therefore at least once. Plain SQL that PostgreSQL and H2 both accept.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EmailOutboxRepository {
+
+    public static final String PENDING = "PENDING";
+    public static final String FAILED = "FAILED";
+
+    /** A claimed message; {@code attempts} includes the one just claimed. */
+    public record OutboxEmail(long id, String recipient, String subject, String body, int attempts) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /** Adds a message, due now, in the caller's transaction. */
+    public void enqueue(String recipient, String subject, String body, LocalDateTime now) {
+        jdbcTemplate.update("""
+                INSERT INTO email_outbox (recipient, subject, body, status, attempts, next_attempt_at, created_at)
+                VALUES (?, ?, ?, 'PENDING', 0, ?, ?)""",
+                recipient, subject, body, Timestamp.valueOf(now), Timestamp.valueOf(now));
+    }
+
+    /** Claims up to {@code limit} due messages, oldest first, until {@code leaseUntil}. */
+    @Transactional
+    public List<OutboxEmail> claimDue(LocalDateTime now, LocalDateTime leaseUntil, int limit) {
+        List<OutboxEmail> due = jdbcTemplate.query("""
+                SELECT id, recipient, subject, body, attempts FROM email_outbox
+                WHERE status = 'PENDING' AND next_attempt_at <= ?
+                ORDER BY next_attempt_at, id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED""",
+                (rs, i) -> new OutboxEmail(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getInt(5) + 1),
+                Timestamp.valueOf(now), limit);
+        if (!due.isEmpty()) {
+            namedJdbcTemplate.update(
+                    "UPDATE email_outbox SET next_attempt_at = :leaseUntil, attempts = attempts + 1 WHERE id IN (:ids)",
+                    new MapSqlParameterSource("leaseUntil", Timestamp.valueOf(leaseUntil))
+                            .addValue("ids", due.stream().map(OutboxEmail::id).toList()));
+        }
+        return due;
+    }
+
+    public void deleteSent(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            namedJdbcTemplate.update("DELETE FROM email_outbox WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    public void retryAt(long id, LocalDateTime at, String error) {
+        jdbcTemplate.update("UPDATE email_outbox SET next_attempt_at = ?, last_error = ? WHERE id = ?",
+                Timestamp.valueOf(at), truncate(error), id);
+    }
+
+    /**
+     * Hands claimed messages back, due again at {@code at}, without counting the attempt: the SMTP
+     * session failed before these messages were tried.
+     */
+    public void release(List<Long> ids, LocalDateTime at, String error) {
+        if (!ids.isEmpty()) {
+            namedJdbcTemplate.update("""
+                    UPDATE email_outbox SET next_attempt_at = :at, attempts = attempts - 1, last_error = :error
+                    WHERE id IN (:ids)""",
+                    new MapSqlParameterSource("at", Timestamp.valueOf(at))
+                            .addValue("error", truncate(error))
+                            .addValue("ids", ids));
+        }
+    }
+
+    /** Gives up on a message; the row stays, with its last error, for inspection. */
+    public void markFailed(long id, String error) {
+        jdbcTemplate.update("UPDATE email_outbox SET status = 'FAILED', last_error = ? WHERE id = ?",
+                truncate(error), id);
+    }
+
+    public long countPending() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox WHERE status = 'PENDING'",
+                Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private static String truncate(String error) {
+        return error == null || error.length() <= 1000 ? error : error.substring(0, 1000);
+    }
+}
@@ -0,0 +1,46 @@
+package webapp_withauth.authapp.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+
+/**
+ * Compare-and-set on {@code job_lease}. A lease is taken by updating a row whose lease has run out,
+ * or by inserting the row the first time a job runs; the primary key makes concurrent first inserts
+ * safe. Both statements are plain SQL, so PostgreSQL and H2 behave the same.
+ *
+ * <p>"Now" is the database's clock, in UTC, never a node's: replicas whose clocks disagree would
+ * otherwise each see the other's lease as expired.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JobLeaseRepository {
+
+    private static final String NOW = "CAST(CURRENT_TIMESTAMP AT TIME ZONE 'UTC' AS TIMESTAMP)";
+    private static final String NOW_PLUS_MILLIS = NOW + " + CAST(? AS DOUBLE PRECISION) * INTERVAL '0.001' SECOND";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Takes the lease for {@code length} if nobody holds it now. */
+    public boolean tryAcquire(String name, String owner, Duration length) {
+        long millis = length.toMillis();
+        int updated = jdbcTemplate.update(
+                "UPDATE job_lease SET owner = ?, leased_until = " + NOW_PLUS_MILLIS
+                        + " WHERE name = ? AND leased_until <= " + NOW,
+                owner, millis, name);
+        if (updated > 0) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO job_lease (name, owner, leased_until) VALUES (?, ?, " + NOW_PLUS_MILLIS + ")",
+                    name, owner, millis);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Row exists and its lease is still running
+            return false;
+        }
+    }
+}
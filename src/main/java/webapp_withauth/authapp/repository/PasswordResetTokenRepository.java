@@ -18,10 +18,17 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
 
     Optional<PasswordResetToken> findByEmail(String email);
 
-    void deleteByEmail(String email);
+    // Consumes the token: of two concurrent resets with the same token only one deletes a row
+    @Modifying
+    @Query("DELETE FROM PasswordResetToken t WHERE t.token = :token AND t.expiry >= :now")
+    int consume(@Param("token") String token, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM PasswordResetToken t WHERE t.email = :email")
+    int deleteByEmail(@Param("email") String email);
 
     @Modifying
     @Transactional
     @Query("DELETE FROM PasswordResetToken t WHERE t.expiry < :now")
-    void deleteAllByExpiryBefore(@Param("now") LocalDateTime now);
+    int deleteAllByExpiryBefore(@Param("now") LocalDateTime now);
 }
\ No newline at end of file
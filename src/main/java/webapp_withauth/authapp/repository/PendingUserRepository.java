@@ -20,14 +20,13 @@ public interface PendingUserRepository extends JpaRepository<PendingUser, Long>
 
     boolean existsByUsername(String username);
 
-    void deleteByEmail(String email);
+    @Modifying
+    @Query("DELETE FROM PendingUser p WHERE p.email = :email")
+    int deleteByEmail(@Param("email") String email);
 
     @Modifying
     @Transactional
     @Query("DELETE FROM PendingUser p WHERE p.expiry < :now")
-    void deleteExpired(@Param("now") LocalDateTime now);
-
-    @Query("SELECT COUNT(p) FROM PendingUser p WHERE p.expiry < :now")
-    long countExpired(@Param("now") LocalDateTime now);
+    int deleteExpired(@Param("now") LocalDateTime now);
 
 }
\ No newline at end of file
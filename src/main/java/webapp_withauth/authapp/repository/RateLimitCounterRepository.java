@@ -0,0 +1,87 @@
+package webapp_withauth.authapp.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Atomic upserts on {@code rate_limit_counter}. Plain JDBC rather than JPA: the increment has to
+ * happen in the database so concurrent replicas add to, rather than overwrite, each other's counts.
+ *
+ * <p>PostgreSQL uses {@code INSERT ... ON CONFLICT DO UPDATE}, which is race-free for concurrent
+ * inserts of the same key; other databases (H2 in tests) use standard {@code MERGE}.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class RateLimitCounterRepository {
+
+    private static final String POSTGRES_UPSERT = """
+            INSERT INTO rate_limit_counter (id, window_start, hits) VALUES (?, ?, ?)
+            ON CONFLICT (id) DO UPDATE SET hits = rate_limit_counter.hits + EXCLUDED.hits""";
+
+    private static final String MERGE_UPSERT = """
+            MERGE INTO rate_limit_counter t
+            USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) AS s (id, window_start, hits)
+            ON t.id = s.id
+            WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits
+            WHEN NOT MATCHED THEN INSERT (id, window_start, hits) VALUES (s.id, s.window_start, s.hits)""";
+
+    // Keeps IN lists well under every driver's bind-parameter limit
+    private static final int READ_CHUNK = 500;
+
+    public record Increment(String id, LocalDateTime windowStart, long delta) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    private String upsertSql;
+
+    @PostConstruct
+    void detectDialect() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        upsertSql = "PostgreSQL".equalsIgnoreCase(product) ? POSTGRES_UPSERT : MERGE_UPSERT;
+        log.debug("Rate-limit counters on {}", product);
+    }
+
+    /** Adds every delta in one JDBC batch. */
+    public void addAll(List<Increment> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(upsertSql, increments, increments.size(), (ps, inc) -> {
+            ps.setString(1, inc.id());
+            ps.setTimestamp(2, Timestamp.valueOf(inc.windowStart()));
+            ps.setLong(3, inc.delta());
+        });
+    }
+
+    /** Current cluster-wide totals; ids without a row are absent from the result. */
+    public Map<String, Long> findHits(Collection<String> ids) {
+        Map<String, Long> hits = new HashMap<>(ids.size() * 2);
+        List<String> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += READ_CHUNK) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + READ_CHUNK));
+            namedJdbcTemplate.query("SELECT id, hits FROM rate_limit_counter WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", chunk),
+                    rs -> {
+                        hits.put(rs.getString(1), rs.getLong(2));
+                    });
+        }
+        return hits;
+    }
+
+    public int deleteWindowsBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM rate_limit_counter WHERE window_start < ?", Timestamp.valueOf(cutoff));
+    }
+}
@@ -1,17 +1,52 @@
 package webapp_withauth.authapp.repository;
 
 import webapp_withauth.authapp.model.RefreshToken;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
-    Optional<RefreshToken> findByToken(String token);
+    // All validity checks in one indexed lookup; a null device only matches tokens issued without one
+    @Query("SELECT r FROM RefreshToken r WHERE r.tokenDigest = :digest AND r.revoked = false AND r.expiry > :now "
+            + "AND r.rotatedAt IS NULL "
+            + "AND (r.deviceId = :deviceId OR (r.deviceId IS NULL AND :deviceId IS NULL))")
+    Optional<RefreshToken> findActiveByDigestAndDevice(@Param("digest") String digest,
+            @Param("deviceId") String deviceId,
+            @Param("now") LocalDateTime now);
 
-    void deleteByToken(String token);
+    Optional<RefreshToken> findByTokenDigest(String tokenDigest);
 
-    void deleteAllByUsername(String username);
+    // Optimistic lock: only the caller that read this version retires the token; rows written before
+    // versioning have a NULL version, read as 0
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.rotatedAt = :now, r.version = COALESCE(r.version, 0) + 1 "
+            + "WHERE r.id = :id AND COALESCE(r.version, 0) = :version AND r.rotatedAt IS NULL AND r.revoked = false")
+    int markRotated(@Param("id") Long id, @Param("version") long version, @Param("now") LocalDateTime now);
 
-    void deleteAllByExpiryBefore(LocalDateTime now);
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revoked = true, r.version = COALESCE(r.version, 0) + 1 "
+            + "WHERE r.familyId = :familyId AND r.revoked = false")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.familyId = :familyId")
+    int deleteByFamilyId(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.tokenDigest = :digest")
+    int deleteByTokenDigest(@Param("digest") String digest);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.username = :username")
+    int deleteAllByUsername(@Param("username") String username);
+
+    // One bounded chunk per transaction, so a large backlog never holds locks for long
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM refresh_token WHERE id IN "
+            + "(SELECT id FROM refresh_token WHERE expiry < :now LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(@Param("now") LocalDateTime now, @Param("limit") int limit);
 }
\ No newline at end of file
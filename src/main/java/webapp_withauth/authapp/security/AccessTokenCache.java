@@ -0,0 +1,84 @@
+package webapp_withauth.authapp.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Access tokens that already passed {@link JwtAuthFilter}, keyed by their SHA-256 digest.
+ *
+ * <p>A hit lets the filter skip signature verification, claim parsing and the user lookup. Each
+ * entry expires at the token's own {@code exp}, so the cache never extends a token's life, and
+ * the number of entries is capped by {@code jwt.access-cache.max-entries}. Revocation is still
+ * checked by the filter on every hit.
+ *
+ * <p>Exposes the standard {@code cache.*} meters under {@code cache=accessTokens}
+ * (gets by hit/miss, size, evictions).
+ */
+@Component
+@Slf4j
+public class AccessTokenCache {
+
+    public record Entry(VerifiedToken token, UserDetails principal) {
+    }
+
+    private final Cache<String, Entry> cache;
+
+    public AccessTokenCache(@Value("${jwt.access-cache.enabled:true}") boolean enabled,
+            @Value("${jwt.access-cache.max-entries:10000}") long maxEntries,
+            MeterRegistry meterRegistry) {
+        if (!enabled) {
+            this.cache = null;
+            log.info("Access token cache disabled");
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new ExpireAtTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "accessTokens");
+    }
+
+    public Entry get(String token) {
+        return cache != null ? cache.getIfPresent(TokenDigests.sha256Hex(token)) : null;
+    }
+
+    public void put(String token, VerifiedToken verified, UserDetails principal) {
+        if (cache == null || verified.expiresAt() == null) {
+            return;
+        }
+        // Keep the password hash out of a long-lived cache; the filter never needs it
+        UserDetails withoutCredentials = User.withUserDetails(principal).password("").build();
+        cache.put(TokenDigests.sha256Hex(token), new Entry(verified, withoutCredentials));
+    }
+
+    private static final class ExpireAtTokenExpiry implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            Duration remaining = Duration.between(Instant.now(), value.token().expiresAt());
+            return Math.max(0, remaining.toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
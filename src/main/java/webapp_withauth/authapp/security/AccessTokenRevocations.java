@@ -0,0 +1,49 @@
+package webapp_withauth.authapp.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revocation hook for access tokens, which are otherwise trusted until they expire.
+ *
+ * <p>Revoking a user rejects every access token issued to them before that moment. An entry only
+ * has to outlive the longest access token it could reject, so it is dropped after one access-token
+ * lifetime. The list is kept per node; the short access-token lifetime bounds how long another
+ * node can keep accepting a revoked token.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AccessTokenRevocations {
+
+    private final JwtService jwtService;
+
+    private final Map<String, Instant> revokedBefore = new ConcurrentHashMap<>();
+
+    public void revokeAll(String username) {
+        // iat has second precision, so tokens issued in the same second as the revocation survive it
+        Instant cutoff = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        revokedBefore.put(username, cutoff);
+        purgeExpired(cutoff);
+        log.info("Revoked access tokens issued to {} before {}", username, cutoff);
+    }
+
+    public boolean isRevoked(VerifiedToken token) {
+        if (revokedBefore.isEmpty()) {
+            return false;
+        }
+        Instant cutoff = revokedBefore.get(token.subject());
+        return cutoff != null && (token.issuedAt() == null || token.issuedAt().isBefore(cutoff));
+    }
+
+    private void purgeExpired(Instant now) {
+        Instant oldestRelevant = now.minus(jwtService.getAccessTokenTtl());
+        revokedBefore.values().removeIf(cutoff -> cutoff.isBefore(oldestRelevant));
+    }
+}
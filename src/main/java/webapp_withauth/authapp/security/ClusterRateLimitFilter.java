@@ -0,0 +1,42 @@
+package webapp_withauth.authapp.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies {@link ClusterRateLimiter} to the public auth endpoints before the security filter chain.
+ * Registered after {@link LoginRateLimitFilter}, so the cheaper per-node buckets shed a login flood
+ * first.
+ */
+public class ClusterRateLimitFilter extends OncePerRequestFilter {
+
+    private final ClusterRateLimiter limiter;
+    private final String clientIpHeader;
+
+    public ClusterRateLimitFilter(ClusterRateLimiter limiter, String clientIpHeader) {
+        this.limiter = limiter;
+        this.clientIpHeader = clientIpHeader == null || clientIpHeader.isBlank() ? null : clientIpHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !limiter.isEnabled() || !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        long wait = limiter.tryAcquire(path, RateLimitResponses.clientIp(request, clientIpHeader));
+        if (wait > 0) {
+            RateLimitResponses.reject(response, wait);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
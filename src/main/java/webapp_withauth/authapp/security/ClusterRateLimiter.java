@@ -0,0 +1,284 @@
+package webapp_withauth.authapp.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import webapp_withauth.authapp.repository.RateLimitCounterRepository;
+import webapp_withauth.authapp.repository.RateLimitCounterRepository.Increment;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client-IP limits on the public auth endpoints, shared by every replica through
+ * {@code rate_limit_counter}.
+ *
+ * <p>Requests are decided from memory: each node keeps the last cluster-wide count it read for
+ * a key plus the hits it has taken since, and estimates a sliding window from the current and
+ * previous fixed windows (the previous one weighted by how much of it still overlaps). Every
+ * {@code rate-limit.cluster.sync-interval} the local hits are added to the database in one batch
+ * of atomic upserts and fresh totals are read back for the keys used since the previous sync, so
+ * the read scales with recent traffic rather than with every client still in memory. A key that has
+ * been idle is decided from its last known total until the sync after its next request. Within a
+ * node the check and the increment are one compare-and-set, so concurrent requests for a key never
+ * take it past its limit. Between syncs a node cannot see other nodes'
+ * hits, so the cluster can overshoot a limit by at most what the other nodes accept in one
+ * interval.
+ *
+ * <p>If the database is unreachable, hits stay queued locally and decisions fall back to what
+ * this node knows.
+ *
+ * <p>The per-key counts live in a Caffeine map capped at {@code rate-limit.cluster.max-keys}, so a
+ * client spraying addresses cannot grow the heap. A key pushed out of the map keeps its shared
+ * row: its unsynced hits are still flushed, and if it comes back it starts from a local count until
+ * the next sync reads its total again.
+ *
+ * <p>Meters: {@code auth.rate_limit.rejected} by {@code scope}, {@code auth.rate_limit.sync}, and
+ * {@code cache.*} for the count map.
+ */
+@Component
+@Slf4j
+public class ClusterRateLimiter {
+
+    public record EndpointLimit(String scope, long maxHits, Duration window) {
+    }
+
+    private static final class WindowCount {
+        final String id;
+        final LocalDateTime windowStart;
+        final long expiresAtMillis;
+        final AtomicLong pending = new AtomicLong();
+        final AtomicLong inFlight = new AtomicLong();
+        volatile long synced;
+        // Used by a decision since the last read-back; a new count has never been read
+        volatile boolean touched = true;
+
+        WindowCount(String id, LocalDateTime windowStart, long expiresAtMillis) {
+            this.id = id;
+            this.windowStart = windowStart;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        long total(long pendingHits) {
+            return synced + inFlight.get() + pendingHits;
+        }
+    }
+
+    private final RateLimitCounterRepository repo;
+    private final boolean enabled;
+    private final Map<String, EndpointLimit> limitsByPath;
+    private final Duration longestWindow;
+    private final Clock clock;
+    private final Cache<String, WindowCount> counts;
+    // Unsynced hits of keys evicted from counts, flushed with the next sync
+    private final Queue<Increment> evicted = new ConcurrentLinkedQueue<>();
+    private final Map<String, Counter> rejected = new HashMap<>();
+    private final Timer syncTimer;
+
+    @Autowired
+    public ClusterRateLimiter(RateLimitCounterRepository repo,
+            @Value("${rate-limit.cluster.enabled:true}") boolean enabled,
+            @Value("${rate-limit.cluster.login.max-hits:100}") long loginMax,
+            @Value("${rate-limit.cluster.login.window:1m}") Duration loginWindow,
+            @Value("${rate-limit.cluster.register.max-hits:20}") long registerMax,
+            @Value("${rate-limit.cluster.register.window:1h}") Duration registerWindow,
+            @Value("${rate-limit.cluster.forgot-password.max-hits:10}") long forgotMax,
+            @Value("${rate-limit.cluster.forgot-password.window:1h}") Duration forgotWindow,
+            @Value("${rate-limit.cluster.resend-otp.max-hits:10}") long resendMax,
+            @Value("${rate-limit.cluster.resend-otp.window:1h}") Duration resendWindow,
+            @Value("${rate-limit.cluster.max-keys:100000}") long maxKeys,
+            MeterRegistry meterRegistry) {
+        this(repo, enabled, Map.of(
+                "/auth/login", new EndpointLimit("login", loginMax, loginWindow),
+                "/auth/register", new EndpointLimit("register", registerMax, registerWindow),
+                "/auth/forgot-password", new EndpointLimit("forgot-password", forgotMax, forgotWindow),
+                "/auth/resend-otp", new EndpointLimit("resend-otp", resendMax, resendWindow)),
+                maxKeys, meterRegistry, Clock.systemUTC());
+    }
+
+    ClusterRateLimiter(RateLimitCounterRepository repo, boolean enabled, Map<String, EndpointLimit> limitsByPath,
+            long maxKeys, MeterRegistry meterRegistry, Clock clock) {
+        this.repo = repo;
+        this.enabled = enabled;
+        this.limitsByPath = Map.copyOf(limitsByPath);
+        this.clock = clock;
+        this.longestWindow = limitsByPath.values().stream()
+                .map(EndpointLimit::window)
+                .max(Comparator.naturalOrder())
+                .orElse(Duration.ofHours(1));
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .evictionListener(this::onEvicted)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, counts, "clusterRateLimit");
+        for (EndpointLimit limit : limitsByPath.values()) {
+            rejected.put(limit.scope(), Counter.builder("auth.rate_limit.rejected")
+                    .description("Requests refused by the cluster-wide rate limiter")
+                    .tag("scope", limit.scope())
+                    .register(meterRegistry));
+        }
+        this.syncTimer = Timer.builder("auth.rate_limit.sync")
+                .description("Time to push local hits to the shared counters and read totals back")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<String> paths() {
+        return limitsByPath.keySet();
+    }
+
+    /** Counts a hit for this client on this path; returns 0 if allowed, otherwise seconds to wait. */
+    public long tryAcquire(String path, String clientKey) {
+        EndpointLimit limit = limitsByPath.get(path);
+        if (!enabled || limit == null) {
+            return 0;
+        }
+        long now = clock.millis();
+        long windowMillis = limit.window().toMillis();
+        long windowStart = now - Math.floorMod(now, windowMillis);
+        String key = limit.scope() + ":" + clientKey;
+
+        WindowCount current = counts.get(id(key, windowStart),
+                id -> new WindowCount(id, toLocal(windowStart), windowStart + 2 * windowMillis));
+        WindowCount previous = counts.getIfPresent(id(key, windowStart - windowMillis));
+
+        current.touched = true;
+        double previousHits = 0;
+        if (previous != null) {
+            previous.touched = true;
+            previousHits = previous.total(previous.pending.get()) * (1.0 - (double) (now - windowStart) / windowMillis);
+        }
+        while (true) {
+            long pending = current.pending.get();
+            if (current.total(pending) + previousHits + 1 > limit.maxHits()) {
+                rejected.get(limit.scope()).increment();
+                return Math.max(1, (windowStart + windowMillis - now + 999) / 1000);
+            }
+            if (current.pending.compareAndSet(pending, pending + 1)) {
+                return 0;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.cluster.sync-interval:1s}")
+    public void sync() {
+        if (!enabled || (counts.estimatedSize() == 0 && evicted.isEmpty())) {
+            return;
+        }
+        syncTimer.record(this::syncNow);
+    }
+
+    // Rows only matter while their window can still weigh in on a decision
+    @Scheduled(fixedDelayString = "${rate-limit.cluster.purge-interval:10m}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        int deleted = repo.deleteWindowsBefore(LocalDateTime.now(clock).minus(longestWindow.multipliedBy(2)));
+        if (deleted > 0) {
+            log.debug("Purged {} expired rate-limit counter(s)", deleted);
+        }
+    }
+
+    private void syncNow() {
+        long now = clock.millis();
+        counts.asMap().values().removeIf(c -> c.expiresAtMillis < now && c.pending.get() == 0);
+
+        // Hits taken during the sync land in pending again; the flushed ones stay visible as inFlight
+        Map<WindowCount, Long> flushed = new IdentityHashMap<>();
+        List<Increment> increments = new ArrayList<>();
+        int orphans = 0;
+        for (Increment orphan; (orphan = evicted.poll()) != null; orphans++) {
+            increments.add(orphan);
+        }
+        // Read back what decisions used since the last sync, which includes everything flushed now
+        List<WindowCount> touched = new ArrayList<>();
+        for (WindowCount count : counts.asMap().values()) {
+            long delta = count.pending.getAndSet(0);
+            if (count.touched || delta > 0) {
+                count.touched = false;
+                touched.add(count);
+            }
+            if (delta > 0) {
+                count.inFlight.addAndGet(delta);
+                flushed.put(count, delta);
+                increments.add(new Increment(count.id, count.windowStart, delta));
+            }
+        }
+
+        Map<String, Long> totals;
+        try {
+            repo.addAll(increments);
+        } catch (DataAccessException e) {
+            log.warn("Could not sync rate-limit counters, keeping {} increment(s) queued: {}",
+                    increments.size(), e.getMessage());
+            flushed.forEach((count, delta) -> {
+                count.inFlight.addAndGet(-delta);
+                count.pending.addAndGet(delta);
+            });
+            touched.forEach(count -> count.touched = true);
+            // Evicted keys have nowhere to wait; holding their hits through an outage would undo the cap
+            if (orphans > 0) {
+                log.debug("Dropped {} increment(s) of evicted rate-limit keys", orphans);
+            }
+            return;
+        }
+        try {
+            totals = repo.findHits(touched.stream().map(count -> count.id).toList());
+        } catch (DataAccessException e) {
+            log.warn("Could not read rate-limit counters: {}", e.getMessage());
+            totals = Map.of();
+            touched.forEach(count -> count.touched = true);
+        }
+
+        for (WindowCount count : touched) {
+            Long total = totals.get(count.id);
+            Long delta = flushed.get(count);
+            if (total != null) {
+                count.synced = total;
+            } else if (delta != null) {
+                count.synced += delta;
+            }
+            if (delta != null) {
+                count.inFlight.addAndGet(-delta);
+            }
+        }
+    }
+
+    /** Number of keys held in memory, after any pending evictions. */
+    long trackedKeys() {
+        counts.cleanUp();
+        return counts.estimatedSize();
+    }
+
+    private void onEvicted(String id, WindowCount count, RemovalCause cause) {
+        long pending = count == null ? 0 : count.pending.getAndSet(0);
+        if (pending > 0) {
+            evicted.add(new Increment(count.id, count.windowStart, pending));
+        }
+    }
+
+    private static String id(String key, long windowStartMillis) {
+        return key + "@" + windowStartMillis / 1000;
+    }
+
+    private static LocalDateTime toLocal(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
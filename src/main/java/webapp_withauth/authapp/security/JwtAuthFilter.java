@@ -3,6 +3,7 @@ package webapp_withauth.authapp.security;
 import jakarta.servlet.*;
 import jakarta.servlet.http.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.*;
@@ -24,6 +25,12 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userService;
+    private final AccessTokenRevocations revocations;
+    private final AccessTokenCache tokenCache;
+
+    // Build the principal from verified claims instead of loading the user on every request
+    @Value("${jwt.stateless-auth:false}")
+    private boolean statelessAuth;
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
@@ -39,27 +46,61 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
 
         final String token = authHeader.substring(7);
-        String username;
+
+        AccessTokenCache.Entry cached = tokenCache.get(token);
+        if (cached != null) {
+            if (!revocations.isRevoked(cached.token())
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                authenticate(cached.principal(), request);
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        VerifiedToken verified;
 
         try {
-            username = jwtService.extractUsername(token);
+            verified = jwtService.verify(token);
         } catch (JwtException | IllegalArgumentException e) {
             logger.warn("Failed to parse JWT: {}", e.getMessage());
             filterChain.doFilter(request, response);
             return;
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userService.loadUserByUsername(username);
-            if (jwtService.isTokenValid(token, userDetails, JwtService.ACCESS_TOKEN_TYPE)) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(userDetails,
-                        null, userDetails.getAuthorities());
+        String username = verified.subject();
 
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+        // The parser has already rejected expired and tampered tokens; only the type and revocation
+        // are left to check before paying for the user lookup.
+        if (username != null
+                && verified.isType(JwtService.ACCESS_TOKEN_TYPE)
+                && !revocations.isRevoked(verified)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = resolveUser(verified);
+            if (userDetails.isEnabled()) {
+                authenticate(userDetails, request);
+                tokenCache.put(token, verified, userDetails);
             }
         }
 
         filterChain.doFilter(request, response);
     }
+
+    private void authenticate(UserDetails userDetails, HttpServletRequest request) {
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(userDetails,
+                null, userDetails.getAuthorities());
+
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+
+    private UserDetails resolveUser(VerifiedToken verified) {
+        if (statelessAuth && verified.carriesAuthorities()) {
+            return User.withUsername(verified.subject())
+                    .password("")
+                    .authorities(verified.roles().toArray(String[]::new))
+                    .disabled(!verified.enabled())
+                    .build();
+        }
+        return userService.loadUserByUsername(verified.subject());
+    }
 }
@@ -5,13 +5,19 @@ import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -21,13 +27,31 @@ public class JwtService {
     public static final String ACCESS_TOKEN_TYPE = "access";
     public static final String REFRESH_TOKEN_TYPE = "refresh";
     private static final String TOKEN_TYPE_CLAIM = "token_type";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String ENABLED_CLAIM = "enabled";
 
     @Value("${jwt.secret}")
     private String secret;
 
+    @Value("${jwt.access-token-ttl:15m}")
+    private Duration accessTokenTtl = Duration.ofMinutes(15);
+
+    // Present only with jwt.signing.algorithm=ES256; access tokens are then signed with its active key.
+    // Refresh tokens never leave this service and stay on the HMAC secret.
+    @Autowired(required = false)
+    private SigningKeyRing keyRing;
+
+    // Derived once at startup; both are immutable and safe to share across request threads.
+    private Key signKey;
+    private JwtParser parser;
+
     @PostConstruct
     public void init() {
         validateSecretInternal();
+        signKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new AlgorithmKeyResolver())
+                .build();
     }
 
     private void validateSecretInternal() {
@@ -44,23 +68,42 @@ public class JwtService {
         log.debug("🔐 JWT secret (partial): {}*********", secret.substring(0, Math.min(4, secret.length())));
     }
 
+    // Roles and the enabled flag ride along so the filter can authenticate from claims alone
+    // when jwt.stateless-auth is on.
     public String generateAccessToken(UserDetails user) {
-        return Jwts.builder()
+        List<String> roles = user.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+
+        JwtBuilder builder = Jwts.builder()
                 .claim(TOKEN_TYPE_CLAIM, ACCESS_TOKEN_TYPE)
+                .claim(ROLES_CLAIM, roles)
+                .claim(ENABLED_CLAIM, user.isEnabled())
                 .setSubject(user.getUsername())
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + 15 * 60 * 1000)) // 15 minutes
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + accessTokenTtl.toMillis()));
+
+        if (keyRing != null) {
+            SigningKeyRing.ActiveKey key = keyRing.activeKey();
+            return builder
+                    .setHeaderParam(JwsHeader.KEY_ID, key.kid())
+                    .signWith(key.privateKey(), SignatureAlgorithm.ES256)
+                    .compact();
+        }
+        return builder
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public String generateRefreshToken(UserDetails user) {
         return Jwts.builder()
                 .claim(TOKEN_TYPE_CLAIM, REFRESH_TOKEN_TYPE)
+                // Without a unique id, two logins by one user in the same second would get the same token
+                .setId(UUID.randomUUID().toString())
                 .setSubject(user.getUsername())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + 7L * 24 * 60 * 60 * 1000)) // 7 days
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -76,15 +119,60 @@ public class JwtService {
         return parseClaims(token).getSubject();
     }
 
+    /**
+     * Verifies the signature and expiry of a token in a single parse.
+     *
+     * @throws JwtException if the token is malformed, tampered with or expired
+     */
+    public VerifiedToken verify(String token) {
+        Claims claims = parseClaims(token);
+        return new VerifiedToken(
+                claims.getSubject(),
+                claims.get(TOKEN_TYPE_CLAIM, String.class),
+                toInstant(claims.getIssuedAt()),
+                toInstant(claims.getExpiration()),
+                extractRoles(claims),
+                claims.get(ENABLED_CLAIM, Boolean.class));
+    }
+
+    public Duration getAccessTokenTtl() {
+        return accessTokenTtl;
+    }
+
+    // null (rather than empty) when the token predates the roles claim, so callers can fall back to a lookup
+    private static List<String> extractRoles(Claims claims) {
+        Object raw = claims.get(ROLES_CLAIM);
+        if (!(raw instanceof List<?> list)) {
+            return null;
+        }
+        return list.stream().map(String::valueOf).toList();
+    }
+
     private Claims parseClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    private Key getSignKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    private static Instant toInstant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+
+    // Picks the verification key from the header: HS256 uses the shared secret, ES256 the key ring by kid.
+    // jjwt additionally checks that the returned key type matches the alg, so HS/ES confusion is rejected.
+    private class AlgorithmKeyResolver extends SigningKeyResolverAdapter {
+
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            String alg = header.getAlgorithm();
+            if (SignatureAlgorithm.HS256.getValue().equals(alg)) {
+                return signKey;
+            }
+            if (SigningKeyRing.ALGORITHM.equals(alg) && keyRing != null && header.getKeyId() != null) {
+                Key key = keyRing.verificationKey(header.getKeyId());
+                if (key != null) {
+                    return key;
+                }
+            }
+            throw new UnsupportedJwtException("No verification key for alg " + alg + ", kid " + header.getKeyId());
+        }
     }
 }
@@ -0,0 +1,174 @@
+package webapp_withauth.authapp.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@link LoginRateLimiter} to {@code POST /auth/login} before the security filter chain, so
+ * throttled attempts never reach the {@code AuthenticationManager} or the password hash.
+ *
+ * <p>The IP bucket is checked first, from data the container already holds; rejecting there
+ * allocates nothing (the status, {@code Retry-After} value and body are all precomputed). Only
+ * requests that pass it have their body buffered and scanned for the username, and the buffered
+ * body is replayed to the controller. Bodies larger than {@link #MAX_BODY_BYTES} are refused,
+ * since a login request is never that big.
+ */
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    static final int MAX_BODY_BYTES = 8 * 1024;
+
+    private final LoginRateLimiter limiter;
+    private final JsonFactory jsonFactory;
+    private final String clientIpHeader;
+
+    public LoginRateLimitFilter(LoginRateLimiter limiter, JsonFactory jsonFactory, String clientIpHeader) {
+        this.limiter = limiter;
+        this.jsonFactory = jsonFactory;
+        this.clientIpHeader = clientIpHeader == null || clientIpHeader.isBlank() ? null : clientIpHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !limiter.isEnabled() || !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long wait = limiter.tryAcquireIp(RateLimitResponses.clientIp(request, clientIpHeader));
+        if (wait > 0) {
+            reject(response, wait);
+            return;
+        }
+
+        if (request.getContentLengthLong() > MAX_BODY_BYTES) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+
+        String username = extractUsername(body);
+        if (username != null) {
+            wait = limiter.tryAcquireUsername(username);
+            if (wait > 0) {
+                reject(response, wait);
+                return;
+            }
+        }
+
+        chain.doFilter(new BufferedBodyRequest(request, body), response);
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        // Round up: retrying after the truncated value would just be refused again
+        RateLimitResponses.reject(response, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+    }
+
+    // Top-level "username" string, or null if absent or the body is not a JSON object
+    private String extractUsername(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("username".equals(field) && value == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            // Malformed JSON is the controller's to reject
+            return null;
+        }
+    }
+
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // The whole body is already in memory: it is available at once, then complete
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
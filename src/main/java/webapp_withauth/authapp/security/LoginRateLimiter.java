@@ -0,0 +1,135 @@
+package webapp_withauth.authapp.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets for login attempts, one per client IP and one per username.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} updated by compare-and-set (the GCRA form of a token
+ * bucket: it stores when the bucket will next be full rather than a token count), so checks never
+ * lock and a check against an existing bucket allocates nothing. Buckets live in Caffeine maps,
+ * which are internally striped, capped at {@code rate-limit.login.max-keys} and dropped after
+ * {@code idle-timeout} without attempts.
+ *
+ * <p>Meters: {@code auth.login.rate_limited} by {@code key} (ip, username), plus {@code cache.*}
+ * for both bucket maps.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final boolean enabled;
+    private final Limit ipLimit;
+    private final Limit usernameLimit;
+    private final Cache<String, Bucket> ipBuckets;
+    private final Cache<String, Bucket> usernameBuckets;
+    private final Counter ipRejected;
+    private final Counter usernameRejected;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LoginRateLimiter(@Value("${rate-limit.login.enabled:true}") boolean enabled,
+            @Value("${rate-limit.login.per-ip.burst:20}") int ipBurst,
+            @Value("${rate-limit.login.per-ip.refill-interval:6s}") Duration ipRefill,
+            @Value("${rate-limit.login.per-username.burst:5}") int usernameBurst,
+            @Value("${rate-limit.login.per-username.refill-interval:12s}") Duration usernameRefill,
+            @Value("${rate-limit.login.max-keys:100000}") long maxKeys,
+            @Value("${rate-limit.login.idle-timeout:15m}") Duration idleTimeout,
+            MeterRegistry meterRegistry) {
+        this(enabled, new Limit(ipBurst, ipRefill), new Limit(usernameBurst, usernameRefill), maxKeys, idleTimeout,
+                meterRegistry, System::nanoTime);
+    }
+
+    LoginRateLimiter(boolean enabled, Limit ipLimit, Limit usernameLimit, long maxKeys, Duration idleTimeout,
+            MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.ipLimit = ipLimit;
+        this.usernameLimit = usernameLimit;
+        this.clock = clock;
+        this.ipBuckets = buckets(maxKeys, idleTimeout);
+        this.usernameBuckets = buckets(maxKeys, idleTimeout);
+        CaffeineCacheMetrics.monitor(meterRegistry, ipBuckets, "loginRateLimitIp");
+        CaffeineCacheMetrics.monitor(meterRegistry, usernameBuckets, "loginRateLimitUsername");
+        this.ipRejected = rejected(meterRegistry, "ip");
+        this.usernameRejected = rejected(meterRegistry, "username");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Takes a token for this IP; returns 0 if allowed, otherwise the nanoseconds until one is free. */
+    public long tryAcquireIp(String ip) {
+        long wait = ipBuckets.get(ip, LoginRateLimiter::newBucket).tryAcquire(clock.getAsLong(), ipLimit);
+        if (wait > 0) {
+            ipRejected.increment();
+        }
+        return wait;
+    }
+
+    /** Takes a token for this username; returns 0 if allowed, otherwise the nanoseconds until one is free. */
+    public long tryAcquireUsername(String username) {
+        long wait = usernameBuckets.get(username, LoginRateLimiter::newBucket)
+                .tryAcquire(clock.getAsLong(), usernameLimit);
+        if (wait > 0) {
+            usernameRejected.increment();
+        }
+        return wait;
+    }
+
+    record Limit(long intervalNanos, long toleranceNanos) {
+
+        Limit(int burst, Duration refillInterval) {
+            this(refillInterval.toNanos(), Math.max(1, burst) * refillInterval.toNanos());
+        }
+    }
+
+    static final class Bucket {
+
+        // Earliest time the bucket is full again; MIN_VALUE means full, whatever the sign of nanoTime
+        private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+        long tryAcquire(long now, Limit limit) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + limit.intervalNanos();
+                long wait = next - limit.toleranceNanos() - now;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private static Bucket newBucket(String key) {
+        return new Bucket();
+    }
+
+    private static Cache<String, Bucket> buckets(long maxKeys, Duration idleTimeout) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .recordStats()
+                .build();
+    }
+
+    private static Counter rejected(MeterRegistry registry, String key) {
+        return Counter.builder("auth.login.rate_limited")
+                .description("Login attempts refused before authentication")
+                .tag("key", key)
+                .register(registry);
+    }
+}
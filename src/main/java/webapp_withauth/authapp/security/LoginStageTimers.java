@@ -0,0 +1,50 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-stage timers for {@code /auth/login}, published as {@code auth.login.stage} with a
+ * {@code stage} tag: {@code lookup} (loading the user), {@code hash} (password check),
+ * {@code sign} (issuing both tokens) and {@code persist} (storing the refresh token).
+ */
+@Component
+public class LoginStageTimers {
+
+    private final Timer lookup;
+    private final Timer hash;
+    private final Timer sign;
+    private final Timer persist;
+
+    public LoginStageTimers(MeterRegistry meterRegistry) {
+        this.lookup = stage(meterRegistry, "lookup");
+        this.hash = stage(meterRegistry, "hash");
+        this.sign = stage(meterRegistry, "sign");
+        this.persist = stage(meterRegistry, "persist");
+    }
+
+    public Timer lookup() {
+        return lookup;
+    }
+
+    public Timer hash() {
+        return hash;
+    }
+
+    public Timer sign() {
+        return sign;
+    }
+
+    public Timer persist() {
+        return persist;
+    }
+
+    private static Timer stage(MeterRegistry registry, String stage) {
+        return Timer.builder("auth.login.stage")
+                .description("Time spent in each stage of a login")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
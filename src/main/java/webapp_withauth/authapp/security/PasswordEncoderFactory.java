@@ -0,0 +1,201 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the application's {@link PasswordEncoder}: a {@link DelegatingPasswordEncoder} that writes
+ * {@code {id}}-prefixed hashes with {@code password-hashing.algorithm} and can still check hashes
+ * from the other algorithms, plus the unprefixed bcrypt hashes stored before prefixes were used.
+ *
+ * <p>With {@code password-hashing.calibrate} on, the work factor of the encoding algorithm is
+ * measured at startup: the highest cost whose median hash time fits in
+ * {@code password-hashing.target-hash-time} wins, but never less than the configured cost, which
+ * acts as a floor. bcrypt and Argon2 record their parameters in the hash, so hashes written at an
+ * older cost keep matching after a recalibration. PBKDF2 does not, so it always runs at Spring
+ * Security's recommended defaults and is not calibrated.
+ *
+ * <p>{@link PasswordEncoder#upgradeEncoding(String)} flags a hash for re-hashing when it was made
+ * with another algorithm, below the cost chosen here, or above the configured maximum. The last case
+ * is what lets an incident lower {@code max-cost}; hashes between the chosen cost and the maximum
+ * are left alone so replicas that calibrate differently do not keep re-hashing each other's work.
+ *
+ * <p>Meters: {@code auth.password.hash.cost} (chosen cost per algorithm) and
+ * {@code auth.password.hash.calibration} (median hash time per measured cost).
+ */
+@Component
+@Slf4j
+public class PasswordEncoderFactory {
+
+    public static final String BCRYPT = "bcrypt";
+    public static final String PBKDF2 = "pbkdf2";
+    public static final String ARGON2 = "argon2";
+
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+
+    // Spring Security 5.8 Argon2 defaults apart from the iteration count, which is the tuned cost
+    private static final int ARGON2_SALT_LENGTH = 16;
+    private static final int ARGON2_HASH_LENGTH = 32;
+    private static final int ARGON2_PARALLELISM = 1;
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+    private static final Pattern ARGON2_PARAMS = Pattern.compile("\\$m=(\\d+),t=(\\d+),p=\\d+\\$");
+
+    private final String algorithm;
+    private final boolean calibrate;
+    private final Duration targetHashTime;
+    private final int samples;
+    private final int bcryptCost;
+    private final int bcryptMaxCost;
+    private final int argon2Iterations;
+    private final int argon2MaxIterations;
+    private final int argon2MemoryKib;
+    private final MeterRegistry meterRegistry;
+
+    public PasswordEncoderFactory(@Value("${password-hashing.algorithm:bcrypt}") String algorithm,
+            @Value("${password-hashing.calibrate:true}") boolean calibrate,
+            @Value("${password-hashing.target-hash-time:250ms}") Duration targetHashTime,
+            @Value("${password-hashing.calibration-samples:3}") int samples,
+            @Value("${password-hashing.bcrypt.cost:10}") int bcryptCost,
+            @Value("${password-hashing.bcrypt.max-cost:14}") int bcryptMaxCost,
+            @Value("${password-hashing.argon2.iterations:2}") int argon2Iterations,
+            @Value("${password-hashing.argon2.max-iterations:10}") int argon2MaxIterations,
+            @Value("${password-hashing.argon2.memory-kib:16384}") int argon2MemoryKib,
+            MeterRegistry meterRegistry) {
+        if (!BCRYPT.equals(algorithm) && !PBKDF2.equals(algorithm) && !ARGON2.equals(algorithm)) {
+            throw new IllegalArgumentException("Unsupported password-hashing.algorithm: " + algorithm);
+        }
+        this.algorithm = algorithm;
+        this.calibrate = calibrate;
+        this.targetHashTime = targetHashTime;
+        this.samples = Math.max(1, samples);
+        this.bcryptCost = bcryptCost;
+        this.bcryptMaxCost = Math.max(bcryptCost, bcryptMaxCost);
+        this.argon2Iterations = argon2Iterations;
+        this.argon2MaxIterations = Math.max(argon2Iterations, argon2MaxIterations);
+        this.argon2MemoryKib = argon2MemoryKib;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public PasswordEncoder create() {
+        int bcrypt = bcryptCost;
+        int argon2 = argon2Iterations;
+        if (calibrate && BCRYPT.equals(algorithm)) {
+            bcrypt = calibrate(BCRYPT, bcryptCost, bcryptMaxCost, this::bcrypt);
+        } else if (calibrate && ARGON2.equals(algorithm)) {
+            argon2 = calibrate(ARGON2, argon2Iterations, argon2MaxIterations, this::argon2);
+        }
+        registerCost(BCRYPT, bcrypt);
+        registerCost(ARGON2, argon2);
+
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, bcrypt(bcrypt));
+        encoders.put(PBKDF2, Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        encoders.put(ARGON2, argon2(argon2));
+
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(algorithm, encoders);
+        // Hashes stored before the {id} prefix was introduced are plain bcrypt
+        delegating.setDefaultPasswordEncoderForMatches(encoders.get(BCRYPT));
+
+        log.info("Password hashing: encoding with {} (bcrypt cost {}, argon2 iterations {})",
+                algorithm, bcrypt, argon2);
+        return delegating;
+    }
+
+    /** Highest cost in [floor, ceiling] whose median hash time fits the budget; cost is assumed to be monotonic. */
+    int calibrate(String name, int floor, int ceiling, IntFunction<PasswordEncoder> atCost) {
+        // One throwaway hash so the first measurement does not include class loading and JIT
+        atCost.apply(floor).encode(SAMPLE_PASSWORD);
+
+        long budgetNanos = targetHashTime.toNanos();
+        int chosen = floor;
+        for (int cost = floor; cost <= ceiling; cost++) {
+            long median = medianHashNanos(atCost.apply(cost));
+            registerMeasurement(name, cost, median);
+            log.debug("Calibrating {}: cost {} took {} ms", name, cost, TimeUnit.NANOSECONDS.toMillis(median));
+            if (median > budgetNanos) {
+                if (cost == floor) {
+                    log.warn("{} at the minimum cost {} takes {} ms, over the {} ms budget; keeping the minimum",
+                            name, floor, TimeUnit.NANOSECONDS.toMillis(median), targetHashTime.toMillis());
+                }
+                break;
+            }
+            chosen = cost;
+        }
+        return chosen;
+    }
+
+    private long medianHashNanos(PasswordEncoder encoder) {
+        long[] timings = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            timings[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(timings);
+        return timings[samples / 2];
+    }
+
+    private PasswordEncoder bcrypt(int cost) {
+        return new BCryptPasswordEncoder(cost) {
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                Matcher m = encodedPassword == null ? null : BCRYPT_COST.matcher(encodedPassword);
+                if (m == null || !m.find()) {
+                    return false;
+                }
+                int stored = Integer.parseInt(m.group(1));
+                return stored < cost || stored > bcryptMaxCost;
+            }
+        };
+    }
+
+    private PasswordEncoder argon2(int iterations) {
+        return new Argon2PasswordEncoder(ARGON2_SALT_LENGTH, ARGON2_HASH_LENGTH, ARGON2_PARALLELISM,
+                argon2MemoryKib, iterations) {
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                Matcher m = encodedPassword == null ? null : ARGON2_PARAMS.matcher(encodedPassword);
+                if (m == null || !m.find()) {
+                    return false;
+                }
+                int storedIterations = Integer.parseInt(m.group(2));
+                return Integer.parseInt(m.group(1)) != argon2MemoryKib
+                        || storedIterations < iterations || storedIterations > argon2MaxIterations;
+            }
+        };
+    }
+
+    private void registerCost(String name, int cost) {
+        Gauge.builder("auth.password.hash.cost", () -> cost)
+                .description("Work factor used for new password hashes")
+                .tag("algorithm", name)
+                .register(meterRegistry);
+    }
+
+    private void registerMeasurement(String name, int cost, long nanos) {
+        TimeGauge.builder("auth.password.hash.calibration", () -> nanos, TimeUnit.NANOSECONDS)
+                .description("Median hash time measured at startup")
+                .tag("algorithm", name)
+                .tag("cost", String.valueOf(cost))
+                .register(meterRegistry);
+    }
+}
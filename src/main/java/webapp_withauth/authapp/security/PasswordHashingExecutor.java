@@ -0,0 +1,81 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated pool for work dominated by password hashing (login, registration, password reset), so
+ * a burst of credential checks cannot occupy every servlet thread.
+ *
+ * <p>The pool has one thread per CPU by default ({@code password-hashing.executor.threads}) and a
+ * bounded queue ({@code queue-capacity}). When the queue is full, {@link #submit(Supplier)} fails
+ * immediately with {@link HashingCapacityExceededException}, which the controllers turn into a
+ * 503 with {@code Retry-After}.
+ *
+ * <p>Meters: the standard {@code executor.*} meters under {@code name=passwordHashing}, plus
+ * {@code auth.password.hash.rejected}.
+ */
+@Component
+@Slf4j
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor pool;
+    private final String retryAfterSeconds;
+    private final Counter rejected;
+
+    public PasswordHashingExecutor(@Value("${password-hashing.executor.threads:0}") int threads,
+            @Value("${password-hashing.executor.queue-capacity:64}") int queueCapacity,
+            @Value("${password-hashing.executor.retry-after:1s}") Duration retryAfter,
+            MeterRegistry meterRegistry) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.rejected = Counter.builder("auth.password.hash.rejected")
+                .description("Hashing tasks refused because the queue was full")
+                .register(meterRegistry);
+        ExecutorServiceMetrics.monitor(meterRegistry, pool, "passwordHashing");
+        log.info("Password hashing pool: {} thread(s), queue capacity {}", size, queueCapacity);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new HashingCapacityExceededException(retryAfterSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Thrown when the hashing queue is full; carries the {@code Retry-After} value in seconds. */
+    public static class HashingCapacityExceededException extends RuntimeException {
+
+        private final String retryAfterSeconds;
+
+        public HashingCapacityExceededException(String retryAfterSeconds) {
+            super("Password hashing queue is full");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public String getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package webapp_withauth.authapp.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client keys and 429 responses shared by the rate-limit filters. Everything written on the
+ * reject path is precomputed for waits of up to two minutes, which covers the login buckets, so
+ * rejecting there allocates nothing; longer waits (the hourly cluster limits) format the header.
+ */
+final class RateLimitResponses {
+
+    private static final int MAX_RETRY_AFTER_SECONDS = 24 * 3600;
+    private static final int PRECOMPUTED_RETRY_AFTER_SECONDS = 120;
+    private static final String[] RETRY_AFTER = new String[PRECOMPUTED_RETRY_AFTER_SECONDS + 1];
+    private static final byte[] TOO_MANY_REQUESTS_BODY =
+            "{\"error\": \"Too many requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        for (int i = 0; i < RETRY_AFTER.length; i++) {
+            RETRY_AFTER[i] = Integer.toString(i);
+        }
+    }
+
+    private RateLimitResponses() {
+    }
+
+    /** The configured proxy header if present (the bundled nginx sets X-Real-IP), else the peer address. */
+    static String clientIp(HttpServletRequest request, String clientIpHeader) {
+        if (clientIpHeader != null) {
+            String forwarded = request.getHeader(clientIpHeader);
+            if (forwarded != null) {
+                return forwarded;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    static void reject(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        int seconds = (int) Math.min(MAX_RETRY_AFTER_SECONDS, Math.max(1, retryAfterSeconds));
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                seconds < RETRY_AFTER.length ? RETRY_AFTER[seconds] : Integer.toString(seconds));
+        response.setContentType("application/json");
+        response.setContentLength(TOO_MANY_REQUESTS_BODY.length);
+        response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+    }
+}
@@ -0,0 +1,55 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import webapp_withauth.authapp.service.PasswordRehashService;
+
+/**
+ * {@link DaoAuthenticationProvider} that hands outdated hashes to {@link PasswordRehashService}
+ * instead of re-hashing inline, which would add a second full hash to every such login. The user
+ * lookup and the password check are timed as the {@code lookup} and {@code hash} login stages.
+ */
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final PasswordRehashService rehashService;
+    private final LoginStageTimers stageTimers;
+
+    public RehashingAuthenticationProvider(UserDetailsService userDetailsService,
+            PasswordEncoder passwordEncoder,
+            PasswordRehashService rehashService,
+            LoginStageTimers stageTimers) {
+        super(passwordEncoder);
+        // retrieveUser is final, so the lookup is timed around the service instead
+        setUserDetailsService(username -> stageTimers.lookup().record(
+                () -> userDetailsService.loadUserByUsername(username)));
+        this.rehashService = rehashService;
+        this.stageTimers = stageTimers;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        Timer.Sample sample = Timer.start();
+        try {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+        } finally {
+            sample.stop(stageTimers.hash());
+        }
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+            UserDetails user) {
+        Object credentials = authentication.getCredentials();
+        if (credentials != null && getPasswordEncoder().upgradeEncoding(user.getPassword())) {
+            rehashService.schedule(user, credentials.toString());
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+}
@@ -0,0 +1,255 @@
+package webapp_withauth.authapp.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import webapp_withauth.authapp.model.JwtSigningKey;
+import webapp_withauth.authapp.repository.JwtSigningKeyRepository;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * ES256 key ring for access tokens, stored in {@code jwt_signing_key} so all replicas agree on it.
+ *
+ * <p>Key lifecycle: a new key is published in the JWKS as soon as it is created but only signs
+ * after {@code jwt.signing.jwks-max-age}, so resource servers holding a cached JWKS learn about it
+ * before they see tokens signed with it. A key is replaced every {@code jwt.signing.rotation-interval}
+ * and keeps verifying for {@code jwt.signing.overlap} after it stops signing. Rotation runs on a
+ * schedule, so it needs no restart.
+ */
+@Component
+@ConditionalOnProperty(name = "jwt.signing.algorithm", havingValue = "ES256")
+@Slf4j
+public class SigningKeyRing {
+
+    public static final String ALGORITHM = "ES256";
+    private static final Duration UNKNOWN_KID_RELOAD_INTERVAL = Duration.ofSeconds(10);
+    private static final int GCM_IV_BYTES = 12;
+
+    public record ActiveKey(String kid, PrivateKey privateKey) {
+    }
+
+    /** Serialized JWK Set with an ETag over its exact bytes. */
+    public record Jwks(String json, String etag) {
+    }
+
+    private record LoadedKey(String kid, PublicKey publicKey, PrivateKey privateKey, LocalDateTime activatesAt) {
+    }
+
+    private record Snapshot(List<LoadedKey> newestFirst, Map<String, PublicKey> byKid, Jwks jwks) {
+    }
+
+    private final JwtSigningKeyRepository repo;
+    private final ObjectMapper objectMapper;
+    private final SecretKey wrappingKey;
+    private final Duration rotationInterval;
+    private final Duration overlap;
+    private final Duration publishLead;
+
+    private volatile Snapshot snapshot;
+    private volatile LocalDateTime lastReload = LocalDateTime.MIN;
+
+    public SigningKeyRing(JwtSigningKeyRepository repo,
+            ObjectMapper objectMapper,
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.signing.rotation-interval:24h}") Duration rotationInterval,
+            @Value("${jwt.signing.overlap:1h}") Duration overlap,
+            @Value("${jwt.signing.jwks-max-age:5m}") Duration publishLead) {
+        this.repo = repo;
+        this.objectMapper = objectMapper;
+        this.wrappingKey = deriveWrappingKey(secret);
+        this.rotationInterval = rotationInterval;
+        this.overlap = overlap;
+        this.publishLead = publishLead;
+    }
+
+    @PostConstruct
+    public void init() {
+        rotateIfDue(LocalDateTime.now());
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.signing.refresh-interval:60s}",
+            initialDelayString = "${jwt.signing.refresh-interval:60s}")
+    public void refresh() {
+        rotateIfDue(LocalDateTime.now());
+    }
+
+    /** The newest key that has finished its publish lead. */
+    public ActiveKey activeKey() {
+        LocalDateTime now = LocalDateTime.now();
+        List<LoadedKey> keys = snapshot.newestFirst();
+        for (LoadedKey key : keys) {
+            if (!key.activatesAt().isAfter(now)) {
+                return new ActiveKey(key.kid(), key.privateKey());
+            }
+        }
+        // Only reachable if every key is still pending; signing with the newest beats failing logins
+        LoadedKey newest = keys.get(0);
+        return new ActiveKey(newest.kid(), newest.privateKey());
+    }
+
+    /**
+     * Public key for a {@code kid}, or {@code null} if unknown. An unknown kid may have just been
+     * created by another replica, so the ring is re-read (at most every few seconds) before giving up.
+     */
+    public PublicKey verificationKey(String kid) {
+        PublicKey key = snapshot.byKid().get(kid);
+        if (key == null && lastReload.plus(UNKNOWN_KID_RELOAD_INTERVAL).isBefore(LocalDateTime.now())) {
+            reload(LocalDateTime.now());
+            key = snapshot.byKid().get(kid);
+        }
+        return key;
+    }
+
+    public Jwks jwks() {
+        return snapshot.jwks();
+    }
+
+    synchronized void rotateIfDue(LocalDateTime now) {
+        int purged = repo.deleteExpired(now);
+        if (purged > 0) {
+            log.info("Removed {} expired JWT signing key(s)", purged);
+        }
+
+        List<JwtSigningKey> keys = repo.findAllByExpiresAtAfterOrderByCreatedAtAsc(now);
+        JwtSigningKey newest = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+        if (newest == null || !newest.getCreatedAt().plus(rotationInterval).isAfter(now)) {
+            // With no usable key there is nothing to overlap with, so the first key signs immediately
+            JwtSigningKey created = generateKey(now, newest == null ? now : now.plus(publishLead));
+            log.info("Created JWT signing key {} (signs from {})", created.getKid(), created.getActivatesAt());
+            keys = repo.findAllByExpiresAtAfterOrderByCreatedAtAsc(now);
+        }
+        install(keys, now);
+    }
+
+    private synchronized void reload(LocalDateTime now) {
+        install(repo.findAllByExpiresAtAfterOrderByCreatedAtAsc(now), now);
+    }
+
+    private void install(List<JwtSigningKey> keys, LocalDateTime now) {
+        List<LoadedKey> loaded = new ArrayList<>(keys.size());
+        for (JwtSigningKey key : keys) {
+            loaded.add(new LoadedKey(key.getKid(), decodePublicKey(key.getPublicKey()),
+                    unwrapPrivateKey(key.getPrivateKey()), key.getActivatesAt()));
+        }
+        loaded.sort(Comparator.comparing(LoadedKey::activatesAt).reversed());
+
+        Map<String, PublicKey> byKid = new HashMap<>();
+        loaded.forEach(key -> byKid.put(key.kid(), key.publicKey()));
+
+        snapshot = new Snapshot(List.copyOf(loaded), Map.copyOf(byKid), buildJwks(loaded));
+        lastReload = now;
+    }
+
+    private JwtSigningKey generateKey(LocalDateTime now, LocalDateTime activatesAt) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair pair = generator.generateKeyPair();
+
+            return repo.save(JwtSigningKey.builder()
+                    .kid(UUID.randomUUID().toString())
+                    .algorithm(ALGORITHM)
+                    .publicKey(Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()))
+                    .privateKey(wrapPrivateKey(pair.getPrivate()))
+                    .createdAt(now)
+                    .activatesAt(activatesAt)
+                    .expiresAt(activatesAt.plus(rotationInterval).plus(overlap))
+                    .build());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not generate EC signing key", e);
+        }
+    }
+
+    private Jwks buildJwks(List<LoadedKey> keys) {
+        List<Map<String, String>> jwkList = new ArrayList<>();
+        for (LoadedKey key : keys) {
+            ECPublicKey ec = (ECPublicKey) key.publicKey();
+            Map<String, String> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("use", "sig");
+            jwk.put("alg", ALGORITHM);
+            jwk.put("kid", key.kid());
+            jwk.put("x", base64UrlCoordinate(ec.getW().getAffineX()));
+            jwk.put("y", base64UrlCoordinate(ec.getW().getAffineY()));
+            jwkList.add(jwk);
+        }
+        try {
+            String json = objectMapper.writeValueAsString(Map.of("keys", jwkList));
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+            return new Jwks(json, etag);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not serialize JWKS", e);
+        }
+    }
+
+    // RFC 7518: coordinates are fixed-length (32 bytes for P-256), big-endian, without a sign byte
+    private static String base64UrlCoordinate(BigInteger value) {
+        byte[] raw = value.toByteArray();
+        byte[] fixed = new byte[32];
+        int copy = Math.min(raw.length, 32);
+        System.arraycopy(raw, raw.length - copy, fixed, 32 - copy, copy);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    private static PublicKey decodePublicKey(String encoded) {
+        try {
+            return KeyFactory.getInstance("EC")
+                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(encoded)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Stored JWT public key is unreadable", e);
+        }
+    }
+
+    private String wrapPrivateKey(PrivateKey key) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_BYTES];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(128, iv));
+        byte[] sealed = cipher.doFinal(key.getEncoded());
+        return Base64.getEncoder().encodeToString(
+                ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array());
+    }
+
+    private PrivateKey unwrapPrivateKey(String wrapped) {
+        try {
+            byte[] bytes = Base64.getDecoder().decode(wrapped);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(128, bytes, 0, GCM_IV_BYTES));
+            byte[] pkcs8 = cipher.doFinal(bytes, GCM_IV_BYTES, bytes.length - GCM_IV_BYTES);
+            return KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Stored JWT private key is unreadable; was jwt.secret changed?", e);
+        }
+    }
+
+    private static SecretKey deriveWrappingKey(String secret) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(hash, "AES");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package webapp_withauth.authapp.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Fixed-length fingerprints of bearer tokens, for use as cache and lookup keys
+ * so the tokens themselves never have to be kept around.
+ */
+public final class TokenDigests {
+
+    private TokenDigests() {
+    }
+
+    /** Lower-case hex SHA-256 of the token, always 64 characters. */
+    public static String sha256Hex(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to ship SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package webapp_withauth.authapp.security;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import webapp_withauth.authapp.model.User;
+
+/**
+ * The one place a stored {@link User} becomes the Spring Security principal that tokens are issued
+ * from, shared by the user lookup behind login and by refresh.
+ */
+public final class UserPrincipals {
+
+    private UserPrincipals() {
+    }
+
+    public static UserDetails from(User user) {
+        return org.springframework.security.core.userdetails.User.builder()
+                .username(user.getUsername())
+                .password(user.getPassword())
+                .roles(user.getRole())
+                .build();
+    }
+}
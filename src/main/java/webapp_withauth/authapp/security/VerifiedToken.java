@@ -0,0 +1,28 @@
+package webapp_withauth.authapp.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Claims of a token whose signature and expiry have already been checked by
+ * {@link JwtService#verify(String)}. Immutable, so it can be shared between
+ * threads and cached without copying.
+ *
+ * <p>{@code roles} and {@code enabled} are {@code null} for tokens issued before
+ * those claims were added.
+ */
+public record VerifiedToken(String subject, String type, Instant issuedAt, Instant expiresAt,
+        List<String> roles, Boolean enabled) {
+
+    public VerifiedToken {
+        roles = roles != null ? List.copyOf(roles) : null;
+    }
+
+    public boolean isType(String expectedType) {
+        return expectedType.equals(type);
+    }
+
+    public boolean carriesAuthorities() {
+        return roles != null && enabled != null;
+    }
+}
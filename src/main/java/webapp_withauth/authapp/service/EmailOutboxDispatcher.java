@@ -0,0 +1,291 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import webapp_withauth.authapp.repository.EmailOutboxRepository;
+import webapp_withauth.authapp.repository.EmailOutboxRepository.OutboxEmail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the mail queued in {@code email_outbox} by {@link EmailService}.
+ *
+ * <p>Every {@code email.outbox.poll-interval} each replica claims due messages in batches of
+ * {@code batch-size} and sends each batch over a single SMTP session, outside any transaction. Up to
+ * {@code email.smtp.max-connections} sessions run at once, each on its own platform thread even in
+ * virtual-thread mode: Angus Mail's {@code SMTPTransport} holds its monitor across socket I/O, which
+ * would pin the carrier for the whole session. A sent message
+ * is deleted; a message the server rejects is retried after a backoff that doubles from
+ * {@code retry.initial-backoff} up to {@code retry.max-backoff}, and marked FAILED after
+ * {@code retry.max-attempts} attempts or at once if the message itself is malformed. A claim lasts
+ * {@code claim-timeout}, after which a message whose sender died is picked up again; it is raised
+ * to the longest a batch can take on a stalling server (every message costing the SMTP connect,
+ * read and write timeouts), so a slow session is never re-claimed and sent twice.
+ *
+ * <p>When the session itself fails (no connection, timeout, dropped connection) the unsent messages
+ * go back to the outbox without using up an attempt, and {@link SmtpCircuitBreaker} is told; while
+ * it is open nothing is claimed and mail waits in the outbox. {@code JavaMailSenderImpl} reconnects
+ * after a message fails on I/O, so a server that stalls mid-message shows up as per-message failures
+ * caused by an {@link IOException}; those count as a broken session too.
+ *
+ * <p>Meters: {@code auth.email.outbox.depth} (pending messages, as of the last poll),
+ * {@code auth.email.send} (SMTP session latency by {@code outcome}, sent or failed) and
+ * {@code auth.email.outbox.dead} (messages given up on).
+ */
+@Service
+@Slf4j
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository outbox;
+    private final JavaMailSender mailSender;
+    private final SmtpCircuitBreaker breaker;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxConnections;
+    private final Duration claimTimeout;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final ExecutorService sessions;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final Timer sent;
+    private final Timer failed;
+    private final Counter dead;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outbox,
+            JavaMailSender mailSender,
+            SmtpCircuitBreaker breaker,
+            @Value("${email.outbox.dispatcher.enabled:true}") boolean enabled,
+            @Value("${email.outbox.batch-size:20}") int batchSize,
+            @Value("${email.smtp.max-connections:2}") int maxConnections,
+            @Value("${email.outbox.claim-timeout:2m}") Duration claimTimeout,
+            @Value("${email.outbox.retry.max-attempts:8}") int maxAttempts,
+            @Value("${email.outbox.retry.initial-backoff:30s}") Duration initialBackoff,
+            @Value("${email.outbox.retry.max-backoff:30m}") Duration maxBackoff,
+            @Value("${spring.mail.properties.mail.smtp.connectiontimeout:0}") long connectTimeoutMillis,
+            @Value("${spring.mail.properties.mail.smtp.timeout:0}") long readTimeoutMillis,
+            @Value("${spring.mail.properties.mail.smtp.writetimeout:0}") long writeTimeoutMillis,
+            MeterRegistry meterRegistry) {
+        this.outbox = outbox;
+        this.mailSender = mailSender;
+        this.breaker = breaker;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.claimTimeout = claimTimeout(claimTimeout, batchSize,
+                Duration.ofMillis(connectTimeoutMillis + readTimeoutMillis + writeTimeoutMillis));
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.sessions = Executors.newFixedThreadPool(this.maxConnections, new CustomizableThreadFactory("smtp-"));
+
+        Gauge.builder("auth.email.outbox.depth", depth, AtomicLong::get)
+                .description("Messages waiting in the email outbox")
+                .register(meterRegistry);
+        this.sent = sendTimer(meterRegistry, "sent");
+        this.failed = sendTimer(meterRegistry, "failed");
+        this.dead = Counter.builder("auth.email.outbox.dead")
+                .description("Outbox messages given up on")
+                .register(meterRegistry);
+    }
+
+    /** The configured claim, or the worst case of a batch whose every message times out if longer. */
+    static Duration claimTimeout(Duration configured, int batchSize, Duration perMessageTimeouts) {
+        Duration worstBatch = perMessageTimeouts.multipliedBy(batchSize);
+        if (worstBatch.compareTo(configured) <= 0) {
+            return configured;
+        }
+        log.info("Claiming outbox batches for {} instead of {}: {} messages may each wait out the SMTP timeouts",
+                worstBatch, configured, batchSize);
+        return worstBatch;
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval:1s}")
+    public void scheduledDispatch() {
+        if (enabled) {
+            dispatch();
+        }
+    }
+
+    /** Sends everything due now; returns the number of messages sent. */
+    public int dispatch() {
+        List<CompletableFuture<Integer>> workers = new ArrayList<>(maxConnections);
+        for (int i = 0; i < maxConnections; i++) {
+            workers.add(CompletableFuture.supplyAsync(this::drain, sessions));
+        }
+        int sentCount = workers.stream().mapToInt(CompletableFuture::join).sum();
+
+        depth.set(outbox.countPending());
+        return sentCount;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.shutdown();
+    }
+
+    /** One connection's worth of work: claims and sends batches until none is left or SMTP fails. */
+    private int drain() {
+        int sentCount = 0;
+        while (breaker.allowRequest()) {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEmail> batch = outbox.claimDue(now, now.plus(claimTimeout), batchSize);
+            if (batch.isEmpty()) {
+                breaker.releaseTrial();
+                break;
+            }
+            Session session = send(batch);
+            sentCount += session.sent();
+            if (session.broken() || batch.size() < batchSize) {
+                break;
+            }
+        }
+        return sentCount;
+    }
+
+    private record Session(int sent, boolean broken) {
+    }
+
+    private Session send(List<OutboxEmail> batch) {
+        SimpleMailMessage[] messages = batch.stream().map(EmailOutboxDispatcher::toMessage)
+                .toArray(SimpleMailMessage[]::new);
+        long start = System.nanoTime();
+        try {
+            mailSender.send(messages);
+            sent.record(Duration.ofNanos(System.nanoTime() - start));
+            breaker.recordSuccess();
+            outbox.deleteSent(batch.stream().map(OutboxEmail::id).toList());
+            return new Session(batch.size(), false);
+        } catch (MailParseException e) {
+            // Thrown while building the messages, before connecting: find the bad one on its own
+            failed.record(Duration.ofNanos(System.nanoTime() - start));
+            if (batch.size() == 1) {
+                giveUpOrRetry(batch.get(0), e);
+                return new Session(0, false);
+            }
+            int sentCount = 0;
+            for (OutboxEmail email : batch) {
+                Session single = send(List.of(email));
+                if (single.broken()) {
+                    return new Session(sentCount, true);
+                }
+                sentCount += single.sent();
+            }
+            return new Session(sentCount, false);
+        } catch (MailException e) {
+            failed.record(Duration.ofNanos(System.nanoTime() - start));
+            return afterFailure(batch, messages, e);
+        }
+    }
+
+    /**
+     * Sorts out a batch the mail sender threw on. Its failed-messages map lists every message not
+     * sent; with a cause attached the session itself broke, without one the server refused those
+     * particular messages, unless a message failed on I/O.
+     */
+    private Session afterFailure(List<OutboxEmail> batch, SimpleMailMessage[] messages, MailException e) {
+        Map<Object, Exception> failedMessages = e instanceof MailSendException mse ? mse.getFailedMessages() : Map.of();
+        if (failedMessages.isEmpty() && e instanceof MailSendException && e.getCause() != null) {
+            // Everything went out; only closing the connection failed
+            breaker.recordSuccess();
+            outbox.deleteSent(batch.stream().map(OutboxEmail::id).toList());
+            return new Session(batch.size(), false);
+        }
+
+        boolean connectionLost = failedMessages.isEmpty() || e.getCause() != null;
+        boolean sessionBroke = connectionLost
+                || failedMessages.values().stream().anyMatch(EmailOutboxDispatcher::isIoFailure);
+        List<Long> done = new ArrayList<>(batch.size());
+        List<Long> unsent = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEmail email = batch.get(i);
+            Exception cause = failedMessages.isEmpty() ? e : failedMessages.get(messages[i]);
+            if (cause == null) {
+                done.add(email.id());
+            } else if (connectionLost || isIoFailure(cause)) {
+                unsent.add(email.id());
+            } else {
+                giveUpOrRetry(email, cause);
+            }
+        }
+        outbox.deleteSent(done);
+
+        if (sessionBroke) {
+            log.warn("SMTP session failed, {} message(s) back in the outbox: {}", unsent.size(), e.getMessage());
+            outbox.release(unsent, LocalDateTime.now(), e.getMessage());
+            breaker.recordFailure();
+        } else {
+            breaker.recordSuccess();
+        }
+        return new Session(done.size(), sessionBroke);
+    }
+
+    /** A timeout or dropped connection somewhere under a message's failure, as opposed to an SMTP reply. */
+    private static boolean isIoFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void giveUpOrRetry(OutboxEmail email, Exception e) {
+        // A message that cannot even be built will not get better with retries
+        if (e instanceof MailParseException || email.attempts() >= maxAttempts) {
+            log.error("Giving up on email {} to {} after {} attempt(s)", email.id(), email.recipient(),
+                    email.attempts(), e);
+            outbox.markFailed(email.id(), e.getMessage());
+            dead.increment();
+            return;
+        }
+        Duration backoff = backoff(email.attempts());
+        log.warn("Sending email {} failed (attempt {}), retrying in {}: {}", email.id(), email.attempts(), backoff,
+                e.getMessage());
+        outbox.retryAt(email.id(), LocalDateTime.now().plus(backoff), e.getMessage());
+    }
+
+    /** Delay after the given failed attempt: doubling from the initial backoff, capped. */
+    Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private static SimpleMailMessage toMessage(OutboxEmail email) {
+        SimpleMailMessage msg = new SimpleMailMessage();
+        msg.setTo(email.recipient());
+        msg.setSubject(email.subject());
+        msg.setText(email.body());
+        return msg;
+    }
+
+    private static Timer sendTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("auth.email.send")
+                .description("SMTP session latency, one sample per batch")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
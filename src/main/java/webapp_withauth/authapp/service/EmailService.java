@@ -1,22 +1,23 @@
 package webapp_withauth.authapp.service;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
+import webapp_withauth.authapp.repository.EmailOutboxRepository;
+
+import java.time.LocalDateTime;
 
 @Service
 @RequiredArgsConstructor
 public class EmailService {
-    private final JavaMailSender mailSender;
+    private final EmailOutboxRepository outbox;
 
-    @Async
+    /**
+     * Queues the message in the email outbox as part of the caller's transaction, so it is sent
+     * (by {@link EmailOutboxDispatcher}) only if that transaction commits, and survives a restart.
+     */
+    @Transactional
     public void send(String to, String subject, String body) {
-        SimpleMailMessage msg = new SimpleMailMessage();
-        msg.setTo(to);
-        msg.setSubject(subject);
-        msg.setText(body);
-        mailSender.send(msg);
+        outbox.enqueue(to, subject, body, LocalDateTime.now());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Re-hashes passwords whose stored hash is outdated, off the login path.
+ *
+ * <p>A successful login queues the user with the password they presented. The queue keeps its own
+ * copy of the {@link UserDetails}: the one passed in becomes the authenticated principal, whose
+ * credentials the authentication manager erases right after login. Repeated logins by the
+ * same user before the next flush collapse into one entry, and the queue is capped by
+ * {@code password-hashing.rehash.max-pending}, so a login storm costs at most one hash and one
+ * row update per user. Each flush hashes up to {@code batch-size} users and writes them in a single
+ * transaction. Plain-text passwords stay in memory only until the next flush.
+ *
+ * <p>Meters: {@code auth.password.rehash} by {@code outcome} (queued, coalesced, dropped, updated,
+ * skipped).
+ */
+@Service
+@Slf4j
+public class PasswordRehashService {
+
+    private record Pending(UserDetails user, String rawPassword) {
+    }
+
+    private final UserDetailsPasswordService passwordService;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxPending;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private final Counter queued;
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Counter updated;
+    private final Counter skipped;
+
+    public PasswordRehashService(UserDetailsPasswordService passwordService,
+            PasswordEncoder passwordEncoder,
+            TransactionTemplate transactionTemplate,
+            @Value("${password-hashing.rehash.batch-size:100}") int batchSize,
+            @Value("${password-hashing.rehash.max-pending:10000}") int maxPending,
+            MeterRegistry meterRegistry) {
+        this.passwordService = passwordService;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.queued = outcome(meterRegistry, "queued");
+        this.coalesced = outcome(meterRegistry, "coalesced");
+        this.dropped = outcome(meterRegistry, "dropped");
+        this.updated = outcome(meterRegistry, "updated");
+        this.skipped = outcome(meterRegistry, "skipped");
+    }
+
+    public void schedule(UserDetails user, String rawPassword) {
+        if (pending.containsKey(user.getUsername())) {
+            coalesced.increment();
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            // The user is re-queued on their next login
+            dropped.increment();
+            return;
+        }
+        UserDetails copy = User.withUserDetails(user).build();
+        if (pending.putIfAbsent(user.getUsername(), new Pending(copy, rawPassword)) == null) {
+            queued.increment();
+        } else {
+            coalesced.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${password-hashing.rehash.flush-interval:5s}")
+    public void flush() {
+        while (!pending.isEmpty()) {
+            List<Pending> batch = drain();
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            // Hash outside the transaction so a slow batch does not hold a connection
+            List<String> hashes = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                hashes.add(passwordEncoder.encode(p.rawPassword()));
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    UserDetails result = passwordService.updatePassword(batch.get(i).user(), hashes.get(i));
+                    (hashes.get(i).equals(result.getPassword()) ? updated : skipped).increment();
+                }
+            });
+            log.debug("Re-hashed {} password(s)", batch.size());
+        }
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < batchSize) {
+            batch.add(it.next().getValue());
+            it.remove();
+        }
+        return batch;
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("auth.password.rehash")
+                .description("Outdated password hashes queued for and written by background re-hashing")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,358 @@
+package webapp_withauth.authapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.jobs.RefreshTokenDigestMigration;
+import webapp_withauth.authapp.model.RefreshToken;
+import webapp_withauth.authapp.repository.RefreshTokenRepository;
+import webapp_withauth.authapp.security.AccessTokenRevocations;
+import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.TokenDigests;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Issues and rotates refresh tokens in families.
+ *
+ * <p>A login starts a family; every refresh retires the presented token (it is kept, with
+ * {@code rotatedAt} set) and issues a successor in the same family. Retirement is a conditional
+ * update on the row's version, so of several concurrent refreshes with one token exactly one wins,
+ * without locking the table.
+ *
+ * <p>Concurrent refreshes are normal (several tabs, a client retrying in parallel), so a retired
+ * token stays usable for {@code refresh-tokens.rotation.grace-period}: callers on the node that
+ * rotated it get the very pair the winner got, and callers on another node get a sibling in the same
+ * family. Presenting a retired token after the grace period means it was copied, so the whole family
+ * is revoked along with the user's outstanding access tokens.
+ *
+ * <p>On one node, refreshes that arrive while the same token is already being rotated do not
+ * repeat the work (JWT parsing, user lookup, signing, writes): they wait for the rotation in flight
+ * and share its pair, or its failure. The wait is capped at
+ * {@code refresh-tokens.rotation.coalesce-timeout}, so a rotation stuck on a database lock holds only
+ * its own request thread; the others fail with {@link RotationInProgressException}, which callers
+ * can retry.
+ *
+ * <p>Meters: {@code auth.refresh.rotation} by {@code outcome} (rotated, grace, sibling, coalesced,
+ * coalesce_timeout, reuse, rejected).
+ */
+@Service
+@Slf4j
+public class RefreshTokenService {
+
+    private static final Duration REFRESH_TOKEN_LIFETIME = Duration.ofDays(7);
+
+    public record TokenPair(String accessToken, String refreshToken) {
+    }
+
+    private record IssuedPair(TokenPair pair, String deviceId) {
+    }
+
+    private record RotationResult(TokenPair pair, boolean reused) {
+    }
+
+    /** The token is unknown, expired, revoked, reused or presented from another device. */
+    public static class InvalidRefreshTokenException extends RuntimeException {
+        public InvalidRefreshTokenException(String message) {
+            super(message);
+        }
+    }
+
+    /** The same token is still being rotated on this node; retrying shortly gets its pair. */
+    public static class RotationInProgressException extends RuntimeException {
+        public RotationInProgressException() {
+            super("Refresh already in progress, please retry shortly");
+        }
+    }
+
+    private final RefreshTokenRepository repo;
+    private final JwtService jwtService;
+    private final UserDetailsService userDetailsService;
+    private final RefreshTokenDigestMigration digestMigration;
+    private final AccessTokenRevocations accessTokenRevocations;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gracePeriod;
+    private final Duration coalesceTimeout;
+
+    // Pairs handed out by recent rotations on this node, keyed by the digest of the retired token
+    private final Cache<String, IssuedPair> recentlyRotated;
+
+    // Rotations running on this node, keyed by token digest and device
+    private final ConcurrentMap<String, CompletableFuture<TokenPair>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter rotated;
+    private final Counter grace;
+    private final Counter sibling;
+    private final Counter reuse;
+    private final Counter rejected;
+    private final Counter coalesced;
+    private final Counter coalesceTimedOut;
+
+    public RefreshTokenService(RefreshTokenRepository repo,
+            JwtService jwtService,
+            UserDetailsService userDetailsService,
+            RefreshTokenDigestMigration digestMigration,
+            AccessTokenRevocations accessTokenRevocations,
+            TransactionTemplate transactionTemplate,
+            @Value("${refresh-tokens.rotation.grace-period:10s}") Duration gracePeriod,
+            @Value("${refresh-tokens.rotation.max-cached-pairs:10000}") long maxCachedPairs,
+            @Value("${refresh-tokens.rotation.coalesce-timeout:2s}") Duration coalesceTimeout,
+            MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.jwtService = jwtService;
+        this.userDetailsService = userDetailsService;
+        this.digestMigration = digestMigration;
+        this.accessTokenRevocations = accessTokenRevocations;
+        this.transactionTemplate = transactionTemplate;
+        this.gracePeriod = gracePeriod;
+        this.coalesceTimeout = coalesceTimeout;
+        this.recentlyRotated = Caffeine.newBuilder()
+                .maximumSize(maxCachedPairs)
+                .expireAfterWrite(gracePeriod)
+                .build();
+        this.rotated = outcome(meterRegistry, "rotated");
+        this.grace = outcome(meterRegistry, "grace");
+        this.sibling = outcome(meterRegistry, "sibling");
+        this.reuse = outcome(meterRegistry, "reuse");
+        this.rejected = outcome(meterRegistry, "rejected");
+        this.coalesced = outcome(meterRegistry, "coalesced");
+        this.coalesceTimedOut = outcome(meterRegistry, "coalesce_timeout");
+    }
+
+    /** Stores the refresh token issued at login as the first member of a new family. */
+    public void startFamily(String username, String refreshToken, String deviceId, String ip, String userAgent) {
+        store(username, refreshToken, UUID.randomUUID().toString(), deviceId, ip, userAgent);
+    }
+
+    public TokenPair rotate(String refreshToken, String deviceId, String ip, String userAgent) {
+        String digest = TokenDigests.sha256Hex(refreshToken);
+        TokenPair cached = cachedPair(digest, deviceId);
+        if (cached != null) {
+            grace.increment();
+            return cached;
+        }
+
+        // Single flight: duplicates arriving while this token is being rotated wait for that rotation
+        String key = digest + '|' + deviceId;
+        CompletableFuture<TokenPair> mine = new CompletableFuture<>();
+        CompletableFuture<TokenPair> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+        try {
+            TokenPair pair = rotateOnce(refreshToken, digest, deviceId, ip, userAgent);
+            mine.complete(pair);
+            return pair;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Later duplicates are answered from recentlyRotated, which the rotation has already filled
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private TokenPair rotateOnce(String refreshToken, String digest, String deviceId, String ip, String userAgent) {
+        String username;
+        try {
+            username = jwtService.extractUsername(refreshToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw reject("Invalid refresh token");
+        }
+
+        RotationResult result = transactionTemplate.execute(status ->
+                rotateInTransaction(refreshToken, digest, username, deviceId, ip, userAgent));
+        if (result.reused()) {
+            // Revocation has committed; now fail the request
+            throw new InvalidRefreshTokenException("Refresh token reuse detected");
+        }
+        return result.pair();
+    }
+
+    /** Ends the session the token belongs to, including every other token of its family. */
+    public void revoke(String refreshToken) {
+        transactionTemplate.executeWithoutResult(status -> {
+            digestMigration.migrateIfLegacy(refreshToken);
+            String digest = TokenDigests.sha256Hex(refreshToken);
+            Optional<RefreshToken> stored = repo.findByTokenDigest(digest);
+            if (stored.isPresent() && stored.get().getFamilyId() != null) {
+                repo.deleteByFamilyId(stored.get().getFamilyId());
+            } else {
+                repo.deleteByTokenDigest(digest);
+            }
+        });
+    }
+
+    private RotationResult rotateInTransaction(String refreshToken, String digest, String username,
+            String deviceId, String ip, String userAgent) {
+        LocalDateTime now = LocalDateTime.now();
+        Optional<RefreshToken> active = repo.findActiveByDigestAndDevice(digest, deviceId, now);
+        if (active.isPresent()) {
+            return new RotationResult(rotateActive(active.get(), refreshToken, digest, username, ip, userAgent, now),
+                    false);
+        }
+
+        // Slow path: work out why the token is not active
+        Optional<RefreshToken> stored = repo.findByTokenDigest(digest);
+        if (stored.isEmpty() && digestMigration.migrateIfLegacy(refreshToken)) {
+            return rotateInTransaction(refreshToken, digest, username, deviceId, ip, userAgent);
+        }
+        RefreshToken token = stored.orElseThrow(() -> reject("Refresh token not found"));
+        if (token.isRevoked() || !token.getExpiry().isAfter(now)) {
+            throw reject("Refresh token revoked or expired");
+        }
+        if (token.getRotatedAt() == null) {
+            throw reject("Invalid device context");
+        }
+
+        if (token.getRotatedAt().plus(gracePeriod).isBefore(now)) {
+            revokeFamily(token);
+            return new RotationResult(null, true);
+        }
+        if (!Objects.equals(token.getDeviceId(), deviceId)) {
+            throw reject("Invalid device context");
+        }
+        TokenPair cached = cachedPair(digest, deviceId);
+        if (cached != null) {
+            grace.increment();
+            return new RotationResult(cached, false);
+        }
+        // Rotated moments ago by another node, whose pair is not cached here
+        sibling.increment();
+        return new RotationResult(issueSuccessor(token, refreshToken, username, ip, userAgent), false);
+    }
+
+    private TokenPair rotateActive(RefreshToken token, String refreshToken, String digest, String username,
+            String ip, String userAgent, LocalDateTime now) {
+        long version = token.getVersion() != null ? token.getVersion() : 0;
+        if (repo.markRotated(token.getId(), version, now) == 0) {
+            // Lost the race; the winner's row lock has been released, so its pair is cached if it ran here
+            TokenPair cached = cachedPair(digest, token.getDeviceId());
+            if (cached != null) {
+                grace.increment();
+                return cached;
+            }
+            sibling.increment();
+            return issueSuccessor(token, refreshToken, username, ip, userAgent);
+        }
+
+        TokenPair pair = issueSuccessor(token, refreshToken, username, ip, userAgent);
+        cacheUntilRollback(digest, new IssuedPair(pair, token.getDeviceId()));
+        rotated.increment();
+        return pair;
+    }
+
+    private TokenPair issueSuccessor(RefreshToken predecessor, String refreshToken, String username,
+            String ip, String userAgent) {
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            throw reject("User not found");
+        }
+        if (!jwtService.isTokenValid(refreshToken, user, JwtService.REFRESH_TOKEN_TYPE)) {
+            throw reject("Invalid refresh token");
+        }
+
+        TokenPair pair = new TokenPair(jwtService.generateAccessToken(user), jwtService.generateRefreshToken(user));
+        // Rows from before families existed start one now
+        String familyId = predecessor.getFamilyId() != null ? predecessor.getFamilyId() : UUID.randomUUID().toString();
+        store(user.getUsername(), pair.refreshToken(), familyId, predecessor.getDeviceId(), ip, userAgent);
+        return pair;
+    }
+
+    private void revokeFamily(RefreshToken token) {
+        int revoked = token.getFamilyId() != null
+                ? repo.revokeFamily(token.getFamilyId())
+                : repo.deleteByTokenDigest(token.getTokenDigest());
+        accessTokenRevocations.revokeAll(token.getUsername());
+        reuse.increment();
+        log.warn("Retired refresh token reused for {}; revoked {} token(s) of family {}",
+                token.getUsername(), revoked, token.getFamilyId());
+    }
+
+    private TokenPair await(CompletableFuture<TokenPair> leader) {
+        try {
+            return leader.get(coalesceTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            coalesceTimedOut.increment();
+            throw new RotationInProgressException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RotationInProgressException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private TokenPair cachedPair(String digest, String deviceId) {
+        IssuedPair issued = recentlyRotated.getIfPresent(digest);
+        return issued != null && Objects.equals(issued.deviceId(), deviceId) ? issued.pair() : null;
+    }
+
+    // Published before commit so a concurrent loser finds it as soon as the row lock is released
+    private void cacheUntilRollback(String digest, IssuedPair issued) {
+        recentlyRotated.put(digest, issued);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        recentlyRotated.invalidate(digest);
+                    }
+                }
+            });
+        }
+    }
+
+    private void store(String username, String refreshToken, String familyId, String deviceId, String ip,
+            String userAgent) {
+        repo.save(RefreshToken.builder()
+                .username(username)
+                .tokenDigest(TokenDigests.sha256Hex(refreshToken))
+                .familyId(familyId)
+                .expiry(LocalDateTime.now().plus(REFRESH_TOKEN_LIFETIME))
+                .revoked(false)
+                .ip(ip)
+                .userAgent(userAgent)
+                .deviceId(deviceId)
+                .build());
+    }
+
+    private InvalidRefreshTokenException reject(String reason) {
+        rejected.increment();
+        return new InvalidRefreshTokenException(reason);
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("auth.refresh.rotation")
+                .description("Refresh token rotations by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
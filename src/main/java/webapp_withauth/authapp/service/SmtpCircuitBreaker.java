@@ -0,0 +1,96 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Keeps {@link EmailOutboxDispatcher} away from an SMTP server that is down or not answering.
+ *
+ * <p>After {@code email.smtp.circuit-breaker.failure-threshold} SMTP sessions in a row fail to
+ * connect or break off, the breaker opens and the dispatcher stops claiming mail; messages simply
+ * stay in the outbox. After {@code open-duration} one session is let through as a trial: if it
+ * succeeds the breaker closes, otherwise it stays open for another {@code open-duration}.
+ *
+ * <p>Meter: {@code auth.email.smtp.circuit} (0 closed, 1 open, 0.5 while a trial is running).
+ */
+@Component
+@Slf4j
+public class SmtpCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    public SmtpCircuitBreaker(@Value("${email.smtp.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${email.smtp.circuit-breaker.open-duration:30s}") Duration openDuration,
+            MeterRegistry meterRegistry) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        Gauge.builder("auth.email.smtp.circuit", this, b -> switch (b.state()) {
+                    case CLOSED -> 0;
+                    case OPEN -> 1;
+                    case HALF_OPEN -> 0.5;
+                })
+                .description("SMTP circuit breaker state")
+                .register(meterRegistry);
+    }
+
+    /** Whether a new SMTP session may start now; an expired open period lets exactly one through. */
+    public synchronized boolean allowRequest() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> {
+                if (System.nanoTime() - openUntil < 0) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    /** Gives back a trial that ended up with nothing to send, so the next poll can take it. */
+    public synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntil = System.nanoTime();
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("SMTP server reachable again, resuming email dispatch");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("SMTP unavailable after {} failed session(s), pausing email dispatch for {} ms",
+                        consecutiveFailures, Duration.ofNanos(openNanos).toMillis());
+            }
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+}
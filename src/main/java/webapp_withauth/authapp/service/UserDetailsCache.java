@@ -0,0 +1,87 @@
+package webapp_withauth.authapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Time-bounded cache in front of {@link UserService#loadUserByUsername(String)}.
+ *
+ * <p>Unknown and unverified usernames are cached as empty results with their own, shorter TTL so
+ * that repeated attempts against missing accounts do not reach the database either. Entries must
+ * be evicted through {@link #evict(String)} whenever a user's password, role or enabled flag
+ * changes. Published as {@code cache.*} meters under {@code cache=userDetails}.
+ */
+@Component
+public class UserDetailsCache {
+
+    private final Cache<String, Optional<UserDetails>> cache;
+
+    public UserDetailsCache(@Value("${users.cache.ttl:60s}") Duration ttl,
+            @Value("${users.cache.negative-ttl:10s}") Duration negativeTtl,
+            @Value("${users.cache.max-entries:10000}") long maxEntries,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new PositiveNegativeExpiry(ttl, negativeTtl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userDetails");
+    }
+
+    /**
+     * Returns the cached result for the username, calling the loader on a miss. Exceptions thrown by
+     * the loader are propagated and nothing is cached.
+     */
+    public Optional<UserDetails> get(String username, Function<String, Optional<UserDetails>> loader) {
+        return cache.get(username, loader);
+    }
+
+    /**
+     * Drops the entry now and, inside a transaction, again once it completes, so a concurrent load
+     * cannot re-cache the pre-commit row.
+     */
+    public void evict(String username) {
+        cache.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(username);
+                }
+            });
+        }
+    }
+
+    private record PositiveNegativeExpiry(Duration ttl, Duration negativeTtl)
+            implements Expiry<String, Optional<UserDetails>> {
+
+        @Override
+        public long expireAfterCreate(String key, Optional<UserDetails> value, long currentTime) {
+            return value.isPresent() ? ttl.toNanos() : negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Optional<UserDetails> value, long currentTime,
+                long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Optional<UserDetails> value, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package webapp_withauth.authapp.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.model.User;
+import webapp_withauth.authapp.repository.BatchInserts;
+import webapp_withauth.authapp.repository.UserRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk import of ready-to-use accounts into {@code users}, for customers migrating from another
+ * system; no OTP verification is involved.
+ *
+ * <p>The input is NDJSON (one object per line) or CSV with a header row, read line by line and
+ * written in chunks of {@code import.users.chunk-size}, so memory stays flat however large it is.
+ * A row carries either a plain {@code password}, hashed here on a pool of
+ * {@code import.users.hashing-threads} kept apart from the login hashing pool, or a
+ * {@code passwordHash} already in a format the password encoder reads. Each chunk is checked for
+ * usernames and emails already taken (in the database or earlier in the chunk) with one query per
+ * column, then inserted in a single transaction with JDBC batches. Taken rows count as duplicates,
+ * malformed ones as invalid; neither stops the import.
+ *
+ * <p>Progress is logged after every chunk. Meters: {@code auth.import.users} by {@code outcome}
+ * (imported, duplicate, invalid).
+ */
+@Service
+@Slf4j
+public class UserImportService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    /** One input row; {@code role} defaults to USER and {@code enabled} to true. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Row(String username, String email, String password, String passwordHash, String role,
+            Boolean enabled) {
+    }
+
+    /** Totals for one import, with the first few problems by input line. */
+    public record Result(long imported, long duplicates, long invalid, List<String> problems, long elapsedMillis) {
+    }
+
+    private static final int MAX_REPORTED_PROBLEMS = 100;
+
+    // What the DelegatingPasswordEncoder can match: its prefixed ids, or bare bcrypt
+    private static final Pattern PASSWORD_HASH = Pattern.compile(
+            "^(\\{(bcrypt|pbkdf2|argon2)\\}.+|\\$2[aby]?\\$\\d\\d\\$[./A-Za-z0-9]{53})$");
+    private static final Pattern ROLE = Pattern.compile("^[A-Z][A-Z_]*$");
+
+    private record Line(long number, Row row) {
+    }
+
+    private final UserRepository userRepo;
+    private final BatchInserts batchInserts;
+    private final UserService userService;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final ExecutorService hashingPool;
+    private final Counter importedCounter;
+    private final Counter duplicateCounter;
+    private final Counter invalidCounter;
+
+    public UserImportService(UserRepository userRepo,
+            BatchInserts batchInserts,
+            UserService userService,
+            PasswordEncoder passwordEncoder,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            @Value("${import.users.chunk-size:1000}") int chunkSize,
+            @Value("${import.users.hashing-threads:0}") int hashingThreads,
+            MeterRegistry meterRegistry) {
+        this.userRepo = userRepo;
+        this.batchInserts = batchInserts;
+        this.userService = userService;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        // Half the CPUs by default, leaving the rest to logins while an import runs
+        int threads = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.hashingPool = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("user-import-hash-"));
+        this.importedCounter = outcome(meterRegistry, "imported");
+        this.duplicateCounter = outcome(meterRegistry, "duplicate");
+        this.invalidCounter = outcome(meterRegistry, "invalid");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdown();
+    }
+
+    /** Imports every row of {@code in}; the stream is read to the end but not closed. */
+    public Result importUsers(InputStream in, Format format) {
+        Progress progress = new Progress();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            long number = 0;
+            Function<String, Row> parser;
+            if (format == Format.CSV) {
+                String header = reader.readLine();
+                number++;
+                if (header == null) {
+                    return progress.result();
+                }
+                parser = csvParser(header);
+            } else {
+                parser = this::parseJson;
+            }
+
+            List<Line> chunk = new ArrayList<>(chunkSize);
+            String text;
+            while ((text = reader.readLine()) != null) {
+                number++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(new Line(number, validate(parser.apply(text))));
+                } catch (IllegalArgumentException e) {
+                    progress.invalid(number, e.getMessage());
+                }
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, progress);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, progress);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading the import failed after " + progress.rows() + " row(s)", e);
+        }
+
+        Result result = progress.result();
+        log.info("User import finished: {} imported, {} duplicate(s), {} invalid in {} ms",
+                result.imported(), result.duplicates(), result.invalid(), result.elapsedMillis());
+        return result;
+    }
+
+    private void writeChunk(List<Line> chunk, Progress progress) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<Line> fresh = new ArrayList<>(chunk.size());
+        for (Line line : chunk) {
+            if (usernames.contains(line.row().username()) || emails.contains(line.row().email())) {
+                progress.duplicate(line.number());
+            } else {
+                usernames.add(line.row().username());
+                emails.add(line.row().email());
+                fresh.add(line);
+            }
+        }
+        Set<String> takenUsernames = new HashSet<>(userRepo.findExistingUsernames(usernames));
+        Set<String> takenEmails = new HashSet<>(userRepo.findExistingEmails(emails));
+        fresh.removeIf(line -> {
+            boolean taken = takenUsernames.contains(line.row().username()) || takenEmails.contains(line.row().email());
+            if (taken) {
+                progress.duplicate(line.number());
+            }
+            return taken;
+        });
+
+        // Hash before the transaction opens, so a slow chunk does not hold a connection
+        List<CompletableFuture<User>> hashing = new ArrayList<>(fresh.size());
+        for (Line line : fresh) {
+            Row row = line.row();
+            hashing.add(row.password() == null
+                    ? CompletableFuture.completedFuture(toUser(row, row.passwordHash()))
+                    : CompletableFuture.supplyAsync(() -> toUser(row, passwordEncoder.encode(row.password())),
+                            hashingPool));
+        }
+        List<User> users = hashing.stream().map(CompletableFuture::join).toList();
+
+        try {
+            insert(users);
+            progress.imported(users.size());
+        } catch (DataIntegrityViolationException e) {
+            // A registration took one of the names after the check; settle the chunk row by row
+            log.debug("Chunk hit a uniqueness violation; inserting its {} row(s) one at a time", users.size());
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                user.setId(null);
+                try {
+                    insert(List.of(user));
+                    progress.imported(1);
+                } catch (DataIntegrityViolationException duplicate) {
+                    progress.duplicate(fresh.get(i).number());
+                }
+            }
+        }
+        progress.report();
+    }
+
+    private void insert(List<User> users) {
+        transactionTemplate.executeWithoutResult(status -> {
+            batchInserts.persistAll(users);
+            // A recent failed login may have cached the name as unknown
+            users.forEach(user -> userService.evict(user.getUsername()));
+        });
+    }
+
+    private static User toUser(Row row, String passwordHash) {
+        return User.builder()
+                .username(row.username())
+                .email(row.email())
+                .password(passwordHash)
+                .role(row.role())
+                .enabled(row.enabled())
+                .build();
+    }
+
+    /** Checks a parsed row and fills in the defaults. */
+    static Row validate(Row row) {
+        String username = trimToNull(row.username());
+        String email = trimToNull(row.email());
+        if (username == null || username.length() > 255) {
+            throw new IllegalArgumentException("username is missing or longer than 255 characters");
+        }
+        if (email == null || email.length() > 255 || email.indexOf('@') < 1) {
+            throw new IllegalArgumentException("email is missing or invalid");
+        }
+        String password = row.password() == null || row.password().isEmpty() ? null : row.password();
+        String passwordHash = trimToNull(row.passwordHash());
+        if ((password == null) == (passwordHash == null)) {
+            throw new IllegalArgumentException("needs exactly one of password and passwordHash");
+        }
+        if (passwordHash != null && !PASSWORD_HASH.matcher(passwordHash).matches()) {
+            throw new IllegalArgumentException("passwordHash is not a bcrypt, {bcrypt}, {pbkdf2} or {argon2} hash");
+        }
+        String role = trimToNull(row.role());
+        if (role == null) {
+            role = "USER";
+        } else if (!ROLE.matcher(role).matches()) {
+            throw new IllegalArgumentException("role must be upper case, like USER");
+        }
+        return new Row(username, email, password, passwordHash, role, row.enabled() == null || row.enabled());
+    }
+
+    private Row parseJson(String text) {
+        try {
+            return objectMapper.readValue(text, Row.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("not a JSON object: " + e.getOriginalMessage());
+        }
+    }
+
+    /** Maps CSV lines to rows by the column names in {@code header}. */
+    static Function<String, Row> csvParser(String header) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT).replace("_", ""), i);
+        }
+        if (!columns.containsKey("username") || !columns.containsKey("email")
+                || !(columns.containsKey("password") || columns.containsKey("passwordhash"))) {
+            throw new IllegalArgumentException(
+                    "CSV header needs username, email and password or passwordHash columns: " + header);
+        }
+
+        return text -> {
+            List<String> fields = splitCsv(text);
+            Function<String, String> field = name -> {
+                Integer index = columns.get(name);
+                return index == null || index >= fields.size() || fields.get(index).isEmpty() ? null : fields.get(index);
+            };
+            String enabled = field.apply("enabled");
+            if (enabled != null && !enabled.equalsIgnoreCase("true") && !enabled.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("enabled must be true or false");
+            }
+            return new Row(field.apply("username"), field.apply("email"), field.apply("password"),
+                    field.apply("passwordhash"), field.apply("role"), enabled == null ? null : Boolean.valueOf(enabled));
+        };
+    }
+
+    /** RFC 4180 fields of a single line: commas inside double quotes, {@code ""} for a quote. */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("auth.import.users")
+                .description("Rows seen by bulk user imports")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /** Totals of one import; only the importing thread touches it. */
+    private final class Progress {
+
+        private final long startNanos = System.nanoTime();
+        private final List<String> problems = new ArrayList<>();
+        private long imported;
+        private long duplicates;
+        private long invalid;
+
+        void imported(int count) {
+            imported += count;
+            importedCounter.increment(count);
+        }
+
+        void duplicate(long line) {
+            duplicates++;
+            duplicateCounter.increment();
+            problem(line, "username or email already exists");
+        }
+
+        void invalid(long line, String reason) {
+            invalid++;
+            invalidCounter.increment();
+            problem(line, reason);
+        }
+
+        private void problem(long line, String reason) {
+            if (problems.size() < MAX_REPORTED_PROBLEMS) {
+                problems.add("line " + line + ": " + reason);
+            }
+        }
+
+        long rows() {
+            return imported + duplicates + invalid;
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        void report() {
+            long millis = Math.max(1, elapsedMillis());
+            log.info("User import: {} row(s) so far ({} imported, {} duplicate, {} invalid), {} rows/s",
+                    rows(), imported, duplicates, invalid, rows() * 1000 / millis);
+        }
+
+        Result result() {
+            return new Result(imported, duplicates, invalid, List.copyOf(problems), elapsedMillis());
+        }
+    }
+}
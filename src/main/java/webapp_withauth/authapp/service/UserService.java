@@ -2,42 +2,75 @@ package webapp_withauth.authapp.service;
 
 import webapp_withauth.authapp.model.User;
 import webapp_withauth.authapp.repository.UserRepository;
+import webapp_withauth.authapp.security.UserPrincipals;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
-public class UserService implements UserDetailsService {
+@Slf4j
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository repo;
+    private final UserDetailsCache cache;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = repo.findByUsername(username)
-                .filter(User::isEnabled)
+        UserDetails cached = cache.get(username, this::loadFromDatabase)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found or not verified"));
 
-        System.out.println("🔍 Found user: " + user.getUsername());
+        // Hand out a copy: the authentication manager erases credentials on the instance it returns
+        return org.springframework.security.core.userdetails.User.withUserDetails(cached).build();
+    }
+
+    /**
+     * Stores a re-hashed password, but only if the stored hash is still the one {@code user} was
+     * loaded with; a password reset in between wins.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        int updated = repo.updatePasswordIfUnchanged(user.getUsername(), user.getPassword(), newPassword);
+        if (updated == 0) {
+            log.debug("Password for {} changed since it was loaded; keeping the stored hash", user.getUsername());
+            return user;
+        }
+        evict(user.getUsername());
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+
+    /** Must be called after a user's password, role or enabled flag changes. */
+    public void evict(String username) {
+        cache.evict(username);
+    }
+
+    private Optional<UserDetails> loadFromDatabase(String username) {
+        Optional<User> found = repo.findByUsername(username).filter(User::isEnabled);
+        if (found.isEmpty()) {
+            log.debug("No enabled user found for {}", username);
+            return Optional.empty();
+        }
+
+        User user = found.get();
+        log.debug("Found user: {}", user.getUsername());
 
         if (user.getRole() == null || user.getRole().isBlank()) {
             throw new IllegalStateException("User role is missing for: " + username);
         }
 
         try {
-            return org.springframework.security.core.userdetails.User.builder()
-                    .username(user.getUsername())
-                    .password(user.getPassword())
-                    .roles(user.getRole())
-                    .build();
-        } catch (Exception e) {
-            System.out.println("💥 Failed to build UserDetails:");
-            System.out.println("   username: " + user.getUsername());
-            System.out.println("   password: " + user.getPassword());
-            System.out.println("   role:     " + user.getRole());
-            e.printStackTrace();
+            return Optional.of(UserPrincipals.from(user));
+        } catch (RuntimeException e) {
+            log.error("Failed to build UserDetails for {} (role: {})", user.getUsername(), user.getRole(), e);
             throw e;
         }
     }
-}
\ No newline at end of file
+}
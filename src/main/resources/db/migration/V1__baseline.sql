@@ -0,0 +1,70 @@
+-- Schema as previously generated by Hibernate (ddl-auto: update). IF NOT EXISTS lets this run
+-- unchanged against databases that already have it.
+
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    email VARCHAR(255) NOT NULL UNIQUE,
+    password VARCHAR(255) NOT NULL,
+    role VARCHAR(255) NOT NULL,
+    enabled BOOLEAN NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS pending_users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    email VARCHAR(255) NOT NULL UNIQUE,
+    encoded_password VARCHAR(255) NOT NULL,
+    otp VARCHAR(255) NOT NULL,
+    otp_sent_at TIMESTAMP(6) NOT NULL,
+    expiry TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS password_reset_token (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email VARCHAR(255),
+    token VARCHAR(255),
+    sent_at TIMESTAMP(6),
+    expiry TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS refresh_token (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255),
+    token_digest VARCHAR(64) UNIQUE,
+    expiry TIMESTAMP(6),
+    revoked BOOLEAN NOT NULL,
+    ip VARCHAR(255),
+    user_agent VARCHAR(255),
+    device_id VARCHAR(255),
+    family_id VARCHAR(36),
+    rotated_at TIMESTAMP(6),
+    version BIGINT
+);
+
+CREATE TABLE IF NOT EXISTS jwt_signing_key (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    kid VARCHAR(64) NOT NULL UNIQUE,
+    algorithm VARCHAR(16) NOT NULL,
+    public_key VARCHAR(512) NOT NULL,
+    private_key VARCHAR(1024) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    activates_at TIMESTAMP(6) NOT NULL,
+    expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS rate_limit_counter (
+    id VARCHAR(255) PRIMARY KEY,
+    window_start TIMESTAMP(6) NOT NULL,
+    hits BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS job_lease (
+    name VARCHAR(100) PRIMARY KEY,
+    owner VARCHAR(255) NOT NULL,
+    leased_until TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_refresh_token_family ON refresh_token (family_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_token_expiry ON refresh_token (expiry);
+CREATE INDEX IF NOT EXISTS idx_rate_limit_counter_window ON rate_limit_counter (window_start);
@@ -0,0 +1,17 @@
+-- Columns that auth endpoints and cleanup jobs filter on but that had no index
+
+-- findByToken (reset / validate-reset-token); tokens are random UUIDs
+CREATE UNIQUE INDEX IF NOT EXISTS uk_password_reset_token_token ON password_reset_token (token);
+-- findByEmail / deleteByEmail (forgot-password, reset-password)
+CREATE INDEX IF NOT EXISTS idx_password_reset_token_email ON password_reset_token (email);
+-- deleteAllByExpiryBefore (cleanup job)
+CREATE INDEX IF NOT EXISTS idx_password_reset_token_expiry ON password_reset_token (expiry);
+
+-- deleteAllByUsername (password reset)
+CREATE INDEX IF NOT EXISTS idx_refresh_token_username ON refresh_token (username);
+
+-- deleteExpired (cleanup job)
+CREATE INDEX IF NOT EXISTS idx_pending_users_expiry ON pending_users (expiry);
+
+-- findAllByExpiresAtAfter / deleteExpired (signing key ring)
+CREATE INDEX IF NOT EXISTS idx_jwt_signing_key_expires_at ON jwt_signing_key (expires_at);
@@ -0,0 +1,17 @@
+-- Mail written in the same transaction as the change it reports; EmailOutboxDispatcher sends it
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    body VARCHAR(8000) NOT NULL,
+    -- PENDING until sent (the row is then deleted) or FAILED after the last attempt
+    status VARCHAR(16) NOT NULL,
+    attempts INT NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    last_error VARCHAR(1000)
+);
+
+-- claimDue / countPending
+CREATE INDEX IF NOT EXISTS idx_email_outbox_due ON email_outbox (status, next_attempt_at);
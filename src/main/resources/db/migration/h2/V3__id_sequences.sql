@@ -0,0 +1,13 @@
+-- Same as postgresql/V3 for H2, which has no setval; H2 databases (tests) always start empty.
+
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY;
+
+CREATE SEQUENCE IF NOT EXISTS pending_users_seq START WITH 1 INCREMENT BY 50;
+ALTER TABLE pending_users ALTER COLUMN id DROP IDENTITY;
+
+CREATE SEQUENCE IF NOT EXISTS password_reset_token_seq START WITH 1 INCREMENT BY 50;
+ALTER TABLE password_reset_token ALTER COLUMN id DROP IDENTITY;
+
+CREATE SEQUENCE IF NOT EXISTS refresh_token_seq START WITH 1 INCREMENT BY 100;
+ALTER TABLE refresh_token ALTER COLUMN id DROP IDENTITY;
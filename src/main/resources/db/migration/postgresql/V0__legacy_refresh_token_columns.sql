@@ -0,0 +1,20 @@
+-- Databases created by Hibernate before these migrations existed (ddl-auto: update) hold a
+-- refresh_token table that V1's CREATE TABLE IF NOT EXISTS leaves alone: the raw token in a
+-- NOT NULL column and none of the later columns. Bring it to V1's shape before V1 indexes it.
+-- Version 0 so it runs first on such a database; on a new one the table does not exist yet and
+-- every statement is a no-op.
+
+ALTER TABLE IF EXISTS refresh_token ADD COLUMN IF NOT EXISTS token_digest VARCHAR(64) UNIQUE;
+ALTER TABLE IF EXISTS refresh_token ADD COLUMN IF NOT EXISTS family_id VARCHAR(36);
+ALTER TABLE IF EXISTS refresh_token ADD COLUMN IF NOT EXISTS rotated_at TIMESTAMP(6);
+-- Existing rows start at version 0, as if just inserted
+ALTER TABLE IF EXISTS refresh_token ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0;
+
+-- New rows store only the digest; RefreshTokenDigestMigration converts the old ones in the background
+DO 'BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = ''refresh_token''
+                 AND column_name = ''token'') THEN
+        ALTER TABLE refresh_token ALTER COLUMN token DROP NOT NULL;
+    END IF;
+END';
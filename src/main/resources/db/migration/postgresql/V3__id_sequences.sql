@@ -0,0 +1,21 @@
+-- Ids come from pooled sequences instead of identity columns so Hibernate can batch inserts: one
+-- nextval hands out INCREMENT BY ids. Hibernate takes the allocation size from the sequence
+-- (increment_size_mismatch_strategy: fix), so resizing a pool is an ALTER SEQUENCE in a later version.
+-- Each sequence starts a full block past the current ids, since a pooled block ends at the value drawn.
+
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+SELECT setval('users_seq', (SELECT COALESCE(MAX(id), 0) FROM users) + 50, false);
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+CREATE SEQUENCE IF NOT EXISTS pending_users_seq INCREMENT BY 50;
+SELECT setval('pending_users_seq', (SELECT COALESCE(MAX(id), 0) FROM pending_users) + 50, false);
+ALTER TABLE pending_users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+CREATE SEQUENCE IF NOT EXISTS password_reset_token_seq INCREMENT BY 50;
+SELECT setval('password_reset_token_seq', (SELECT COALESCE(MAX(id), 0) FROM password_reset_token) + 50, false);
+ALTER TABLE password_reset_token ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+-- One row per login and per rotation: the busiest insert path gets the largest block
+CREATE SEQUENCE IF NOT EXISTS refresh_token_seq INCREMENT BY 100;
+SELECT setval('refresh_token_seq', (SELECT COALESCE(MAX(id), 0) FROM refresh_token) + 100, false);
+ALTER TABLE refresh_token ALTER COLUMN id DROP IDENTITY IF EXISTS;
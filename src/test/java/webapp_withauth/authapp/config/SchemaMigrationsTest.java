@@ -0,0 +1,259 @@
+package webapp_withauth.authapp.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.AuthappApplication;
+import webapp_withauth.authapp.jobs.RefreshTokenDigestMigration;
+import webapp_withauth.authapp.repository.*;
+import webapp_withauth.authapp.security.TokenDigests;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(StatementCapture.class)
+@ActiveProfiles("test")
+public class SchemaMigrationsTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SchemaMigrations schemaMigrations;
+
+    // Every migration on the classpath is recorded, in order
+    @Test
+    void migrate_recordsEveryScript() {
+        List<Integer> applied = jdbcTemplate.queryForList(
+                "SELECT version FROM schema_migration ORDER BY version", Integer.class);
+
+        assertEquals(SchemaMigrations.load("h2").stream().map(SchemaMigrations.Migration::version).toList(), applied);
+    }
+
+    // Running again is a no-op once everything is applied
+    @Test
+    void migrate_secondRun_appliesNothing() {
+        Integer before = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_migration", Integer.class);
+
+        schemaMigrations.migrate();
+
+        assertEquals(before, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_migration", Integer.class));
+    }
+
+    // An applied script that was edited afterwards stops startup
+    @Test
+    void migrate_editedScript_fails() {
+        jdbcTemplate.update("UPDATE schema_migration SET checksum = 'edited' WHERE version = 1");
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, schemaMigrations::migrate);
+            assertTrue(e.getMessage().contains("V1"));
+        } finally {
+            jdbcTemplate.update("UPDATE schema_migration SET checksum = ? WHERE version = 1",
+                    SchemaMigrations.load("h2").get(0).checksum());
+        }
+    }
+
+    // A database created by ddl-auto before the migrations existed upgrades, and the app starts on it
+    @Test
+    void migrate_upgradesPreMigrationDatabase() {
+        String url = "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "");
+        JdbcTemplate legacy = new JdbcTemplate(dataSource);
+        // As Hibernate generated it from the entities at the time
+        legacy.execute("CREATE TABLE users (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "email VARCHAR(255) NOT NULL UNIQUE, enabled BOOLEAN NOT NULL, password VARCHAR(255) NOT NULL, "
+                + "role VARCHAR(255) NOT NULL, username VARCHAR(255) NOT NULL UNIQUE)");
+        legacy.execute("CREATE TABLE pending_users (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "email VARCHAR(255) NOT NULL UNIQUE, encoded_password VARCHAR(255) NOT NULL, "
+                + "expiry TIMESTAMP(6) NOT NULL, otp VARCHAR(255) NOT NULL, otp_sent_at TIMESTAMP(6) NOT NULL, "
+                + "username VARCHAR(255) NOT NULL UNIQUE)");
+        legacy.execute("CREATE TABLE password_reset_token (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "email VARCHAR(255), expiry TIMESTAMP(6), sent_at TIMESTAMP(6), token VARCHAR(255))");
+        legacy.execute("CREATE TABLE refresh_token (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "device_id VARCHAR(255), expiry TIMESTAMP(6), ip VARCHAR(255), revoked BOOLEAN NOT NULL, "
+                + "token VARCHAR(255) NOT NULL UNIQUE, user_agent VARCHAR(255), username VARCHAR(255))");
+        legacy.update("INSERT INTO refresh_token (device_id, expiry, revoked, token, username) "
+                + "VALUES ('d', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, 'legacy.token', 'u')");
+
+        new SchemaMigrations(dataSource).migrate();
+
+        assertEquals(SchemaMigrations.load("h2").size(),
+                legacy.queryForObject("SELECT COUNT(*) FROM schema_migration", Integer.class));
+        assertEquals(0L, legacy.queryForObject("SELECT version FROM refresh_token", Long.class));
+        // New rows carry only a digest, which must be unique
+        String insert = "INSERT INTO refresh_token (id, token_digest, revoked, version) VALUES (?, 'd1', false, 0)";
+        legacy.update(insert, 1000);
+        assertThrows(DuplicateKeyException.class, () -> legacy.update(insert, 1001));
+
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(AuthappApplication.class)
+                .profiles("test")
+                .run("--spring.datasource.url=" + url, "--server.port=0", "--spring.jpa.show-sql=false")) {
+            // Converts the legacy row, unless the pass started at application-ready got there first
+            app.getBean(RefreshTokenDigestMigration.class).run();
+        }
+        assertEquals(TokenDigests.sha256Hex("legacy.token"), legacy.queryForObject(
+                "SELECT token_digest FROM refresh_token WHERE username = 'u'", String.class));
+    }
+
+    // H2 names the index it picks in the plan, or "tableScan" when there is none
+    @Test
+    void repositoryQueries_useIndexes_onH2() {
+        assertRepositoryQueriesUseIndexes(context, connection -> {
+        }, "tableScan");
+    }
+
+    // Needs a scratch database, e.g. POSTGRES_TEST_URL=jdbc:postgresql://localhost:5432/authdb_test
+    @Test
+    @EnabledIfEnvironmentVariable(named = "POSTGRES_TEST_URL", matches = ".+")
+    void repositoryQueries_useIndexes_onPostgres() {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(AuthappApplication.class,
+                StatementCapture.class)
+                .profiles("test")
+                .run("--spring.datasource.url=" + System.getenv("POSTGRES_TEST_URL"),
+                        "--spring.datasource.username=" + System.getenv().getOrDefault("POSTGRES_TEST_USER", "postgres"),
+                        "--spring.datasource.password=" + System.getenv().getOrDefault("POSTGRES_TEST_PASSWORD", "postgres"),
+                        "--spring.datasource.driver-class-name=org.postgresql.Driver",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false")) {
+            assertRepositoryQueriesUseIndexes(app, connection -> {
+                // Tables are empty, so a sequential scan would always win on cost; only ask whether an index fits
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET enable_seqscan = off");
+                }
+            }, "Seq Scan");
+        }
+    }
+
+    private interface ConnectionSetUp {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs every repository call in a transaction that is rolled back, then asks the database for the
+     * plan of each statement it sent, with the same values bound. Hibernate's SQL is checked as
+     * generated, so a query that drifts off its index fails here.
+     */
+    private static void assertRepositoryQueriesUseIndexes(ApplicationContext context, ConnectionSetUp setUp,
+            String scan) {
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        DataSource dataSource = context.getBean(DataSource.class);
+        repositoryCalls(context).forEach((call, action) -> {
+            List<StatementCapture.Captured> statements = StatementCapture.record(() ->
+                    transaction.executeWithoutResult(status -> {
+                        action.run();
+                        status.setRollbackOnly();
+                    }));
+            assertFalse(statements.isEmpty(), call + " sent no SQL");
+
+            try (Connection connection = dataSource.getConnection()) {
+                setUp.apply(connection);
+                for (StatementCapture.Captured statement : statements) {
+                    StringBuilder plan = new StringBuilder();
+                    try (PreparedStatement explain = statement.prepare(connection, "EXPLAIN ");
+                            ResultSet rs = explain.executeQuery()) {
+                        while (rs.next()) {
+                            plan.append(rs.getString(1)).append('\n');
+                        }
+                    }
+                    assertFalse(plan.toString().contains(scan), call + " scans a table:\n" + plan);
+                }
+            } catch (Exception e) {
+                throw new AssertionError(call + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Every repository query, called the way the application calls it
+    private static Map<String, Runnable> repositoryCalls(ApplicationContext context) {
+        UserRepository users = context.getBean(UserRepository.class);
+        PendingUserRepository pendingUsers = context.getBean(PendingUserRepository.class);
+        PasswordResetTokenRepository resetTokens = context.getBean(PasswordResetTokenRepository.class);
+        RefreshTokenRepository refreshTokens = context.getBean(RefreshTokenRepository.class);
+        JwtSigningKeyRepository signingKeys = context.getBean(JwtSigningKeyRepository.class);
+        RateLimitCounterRepository rateLimits = context.getBean(RateLimitCounterRepository.class);
+        EmailOutboxRepository outbox = context.getBean(EmailOutboxRepository.class);
+        JobLeaseRepository jobLeases = context.getBean(JobLeaseRepository.class);
+        LocalDateTime now = LocalDateTime.now();
+
+        Map<String, Runnable> calls = new LinkedHashMap<>();
+        calls.put("UserRepository.findByUsername", () -> users.findByUsername("u"));
+        calls.put("UserRepository.findByEmail", () -> users.findByEmail("e"));
+        calls.put("UserRepository.existsByUsername", () -> users.existsByUsername("u"));
+        calls.put("UserRepository.existsByEmail", () -> users.existsByEmail("e"));
+        calls.put("UserRepository.findExistingUsernames", () -> users.findExistingUsernames(List.of("u1", "u2")));
+        calls.put("UserRepository.findExistingEmails", () -> users.findExistingEmails(List.of("e1", "e2")));
+        calls.put("UserRepository.updatePassword", () -> users.updatePassword(1L, "p"));
+        calls.put("UserRepository.updatePasswordIfUnchanged", () -> users.updatePasswordIfUnchanged("u", "o", "n"));
+        calls.put("PendingUserRepository.findByEmail", () -> pendingUsers.findByEmail("e"));
+        calls.put("PendingUserRepository.findByUsername", () -> pendingUsers.findByUsername("u"));
+        calls.put("PendingUserRepository.existsByEmail", () -> pendingUsers.existsByEmail("e"));
+        calls.put("PendingUserRepository.existsByUsername", () -> pendingUsers.existsByUsername("u"));
+        calls.put("PendingUserRepository.deleteByEmail", () -> pendingUsers.deleteByEmail("e"));
+        calls.put("PendingUserRepository.deleteExpired", () -> pendingUsers.deleteExpired(now));
+        calls.put("PasswordResetTokenRepository.findByToken", () -> resetTokens.findByToken("t"));
+        calls.put("PasswordResetTokenRepository.findByEmail", () -> resetTokens.findByEmail("e"));
+        calls.put("PasswordResetTokenRepository.consume", () -> resetTokens.consume("t", now));
+        calls.put("PasswordResetTokenRepository.deleteByEmail", () -> resetTokens.deleteByEmail("e"));
+        calls.put("PasswordResetTokenRepository.deleteAllByExpiryBefore", () -> resetTokens.deleteAllByExpiryBefore(now));
+        calls.put("RefreshTokenRepository.findActiveByDigestAndDevice",
+                () -> refreshTokens.findActiveByDigestAndDevice("d", "device", now));
+        calls.put("RefreshTokenRepository.findActiveByDigestAndDevice (no device)",
+                () -> refreshTokens.findActiveByDigestAndDevice("d", null, now));
+        calls.put("RefreshTokenRepository.findByTokenDigest", () -> refreshTokens.findByTokenDigest("d"));
+        calls.put("RefreshTokenRepository.markRotated", () -> refreshTokens.markRotated(1L, 0, now));
+        calls.put("RefreshTokenRepository.revokeFamily", () -> refreshTokens.revokeFamily("f"));
+        calls.put("RefreshTokenRepository.deleteByFamilyId", () -> refreshTokens.deleteByFamilyId("f"));
+        calls.put("RefreshTokenRepository.deleteByTokenDigest", () -> refreshTokens.deleteByTokenDigest("d"));
+        calls.put("RefreshTokenRepository.deleteAllByUsername", () -> refreshTokens.deleteAllByUsername("u"));
+        calls.put("RefreshTokenRepository.deleteExpiredChunk", () -> refreshTokens.deleteExpiredChunk(now, 1000));
+        calls.put("JwtSigningKeyRepository.findAllByExpiresAtAfterOrderByCreatedAtAsc",
+                () -> signingKeys.findAllByExpiresAtAfterOrderByCreatedAtAsc(now));
+        calls.put("JwtSigningKeyRepository.deleteExpired", () -> signingKeys.deleteExpired(now));
+        calls.put("RateLimitCounterRepository.addAll",
+                () -> rateLimits.addAll(List.of(new RateLimitCounterRepository.Increment("k", now, 1))));
+        calls.put("RateLimitCounterRepository.findHits", () -> rateLimits.findHits(List.of("a", "b")));
+        calls.put("RateLimitCounterRepository.deleteWindowsBefore", () -> rateLimits.deleteWindowsBefore(now));
+        calls.put("EmailOutboxRepository.claimDue", () -> {
+            outbox.enqueue("r@example.com", "s", "b", now.minusSeconds(1));
+            outbox.claimDue(now, now.plusMinutes(2), 20);
+        });
+        calls.put("EmailOutboxRepository.deleteSent", () -> outbox.deleteSent(List.of(1L, 2L)));
+        calls.put("EmailOutboxRepository.retryAt", () -> outbox.retryAt(1L, now, "e"));
+        calls.put("EmailOutboxRepository.release", () -> outbox.release(List.of(1L, 2L), now, "e"));
+        calls.put("EmailOutboxRepository.markFailed", () -> outbox.markFailed(1L, "e"));
+        calls.put("EmailOutboxRepository.countPending", outbox::countPending);
+        calls.put("JobLeaseRepository.tryAcquire", () -> {
+            jobLeases.tryAcquire("index-check", "o", Duration.ofMinutes(1));
+            jobLeases.tryAcquire("index-check", "o", Duration.ofMinutes(1));
+        });
+        return calls;
+    }
+}
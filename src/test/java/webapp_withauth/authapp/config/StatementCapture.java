@@ -0,0 +1,109 @@
+package webapp_withauth.authapp.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps the application's {@link DataSource} so a test can see the SQL the code really runs:
+ * Hibernate-generated and hand-written alike, with the values bound to it. Only statements prepared
+ * on the current thread inside {@link #record(Runnable)} are kept.
+ */
+class StatementCapture implements BeanPostProcessor {
+
+    /** One bind call, e.g. {@code setString(1, "x")}, to be replayed on another statement. */
+    record Bind(Method method, Object[] args) {
+    }
+
+    record Captured(String sql, List<Bind> binds) {
+
+        /** Prepares {@code prefix + sql} on the connection with the same values bound. */
+        PreparedStatement prepare(Connection connection, String prefix) throws Exception {
+            PreparedStatement statement = connection.prepareStatement(prefix + sql);
+            for (Bind bind : binds) {
+                bind.method().invoke(statement, bind.args());
+            }
+            return statement;
+        }
+    }
+
+    private static final ThreadLocal<List<Captured>> RECORDING = new ThreadLocal<>();
+
+    static List<Captured> record(Runnable action) {
+        List<Captured> captured = new ArrayList<>();
+        RECORDING.set(captured);
+        try {
+            action.run();
+        } finally {
+            RECORDING.remove();
+        }
+        return captured;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            // AutoCloseable too, so the pool is still closed with the context
+            return proxy(DataSource.class, dataSource, (target, method, args) -> {
+                Object result = method.invoke(target, args);
+                return result instanceof Connection connection ? connection(connection) : result;
+            });
+        }
+        return bean;
+    }
+
+    private static Connection connection(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            Object result = method.invoke(target, args);
+            List<Captured> recording = RECORDING.get();
+            if (recording == null) {
+                return result;
+            }
+            if (result instanceof PreparedStatement prepared && args != null && args[0] instanceof String sql) {
+                List<Bind> binds = new ArrayList<>();
+                recording.add(new Captured(sql, binds));
+                return proxy(PreparedStatement.class, prepared, (statement, m, a) -> {
+                    if (m.getName().startsWith("set") && a != null && a.length >= 2 && a[0] instanceof Integer) {
+                        binds.add(new Bind(m, a.clone()));
+                    }
+                    return m.invoke(statement, a);
+                });
+            }
+            if (result instanceof Statement plain && !(result instanceof PreparedStatement)) {
+                return proxy(Statement.class, plain, (statement, m, a) -> {
+                    if (m.getName().startsWith("execute") && a != null && a[0] instanceof String sql) {
+                        recording.add(new Captured(sql, List.of()));
+                    }
+                    return m.invoke(statement, a);
+                });
+            }
+            return result;
+        });
+    }
+
+    private interface Handler<T> {
+        Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Handler<T> handler) {
+        Class<?>[] interfaces = target instanceof AutoCloseable && !AutoCloseable.class.isAssignableFrom(type)
+                ? new Class<?>[] {type, AutoCloseable.class}
+                : new Class<?>[] {type};
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), interfaces, (p, method, args) -> {
+            try {
+                return handler.invoke(target, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
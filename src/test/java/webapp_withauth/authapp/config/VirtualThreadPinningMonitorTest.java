@@ -0,0 +1,103 @@
+package webapp_withauth.authapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.threads.virtual.enabled=true")
+@ActiveProfiles("test")
+public class VirtualThreadPinningMonitorTest {
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor applicationTaskExecutor;
+
+    @Autowired
+    private VirtualThreadPinningMonitor monitor;
+
+    // Virtual mode runs @Scheduled and @Async work on virtual threads
+    @Test
+    void virtualMode_schedulerAndAsyncUseVirtualThreads() throws Exception {
+        assertNotNull(monitor);
+
+        CompletableFuture<Boolean> scheduled = new CompletableFuture<>();
+        taskScheduler.schedule(() -> scheduled.complete(Thread.currentThread().isVirtual()), Instant.now());
+        assertTrue(scheduled.get(5, TimeUnit.SECONDS));
+
+        assertTrue(applicationTaskExecutor.submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS));
+    }
+
+    // Frames are attributed to the innermost known package
+    @Test
+    void path_classifiesByInnermostKnownFrame() {
+        assertEquals("jdbc", VirtualThreadPinningMonitor.path(List.of(
+                "java.lang.VirtualThread.parkOnCarrierThread",
+                "org.postgresql.core.VisibleBufferedInputStream.read",
+                "org.springframework.mail.javamail.JavaMailSenderImpl.doSend")));
+        assertEquals("mail", VirtualThreadPinningMonitor.path(List.of(
+                "java.net.Socket$SocketInputStream.read",
+                "org.eclipse.angus.mail.smtp.SMTPTransport.readServerResponse")));
+        assertEquals("other", VirtualThreadPinningMonitor.path(List.of("java.lang.Thread.sleep")));
+    }
+
+    // SMTP on a virtual thread pins its carrier while waiting on the server, and is reported as such
+    @Test
+    void smtpOnVirtualThread_reportedAsMailPin() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        VirtualThreadPinningMonitor standalone = new VirtualThreadPinningMonitor(Duration.ofMillis(10), registry);
+        standalone.start();
+        // Never accepts or greets: the client blocks reading the greeting until its timeout
+        try (ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("127.0.0.1");
+            sender.setPort(silent.getLocalPort());
+            Properties props = new Properties();
+            props.put("mail.smtp.connectiontimeout", "300");
+            props.put("mail.smtp.timeout", "300");
+            sender.setJavaMailProperties(props);
+            SimpleMailMessage msg = new SimpleMailMessage();
+            msg.setFrom("noreply@example.com");
+            msg.setTo("a@example.com");
+            msg.setText("Body");
+
+            Thread.ofVirtual().start(() -> assertThrows(MailException.class, () -> sender.send(msg))).join();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pinned(registry, "mail") == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            assertTrue(pinned(registry, "mail") >= 1);
+        } finally {
+            standalone.stop();
+        }
+    }
+
+    private static double pinned(MeterRegistry registry, String path) {
+        return Search.in(registry).name("auth.vthread.pinned").tag("path", path).counters().stream()
+                .mapToDouble(c -> c.count()).sum();
+    }
+}
@@ -0,0 +1,82 @@
+package webapp_withauth.authapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.Sql.ExecutionPhase;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import webapp_withauth.authapp.model.RefreshRequest;
+import webapp_withauth.authapp.security.JwtService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test", "refresh-offload"})
+@Sql(executionPhase = ExecutionPhase.BEFORE_TEST_CLASS, statements = {
+        "INSERT INTO users (id, username, email, password, role, enabled) VALUES (20, 'asyncuser', 'async@example.com', '$2a$10$validhashed', 'USER', true)",
+        // sha256("dummy.token.100")
+        "INSERT INTO refresh_token (id, username, token_digest, family_id, expiry, revoked, ip, user_agent, device_id) " +
+                "VALUES (200, 'asyncuser', '0eba30f688beb951114f2947c02acbd9bc5060e794344ce58e95d66b57d082b0', 'family-200', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+})
+public class AsyncRefreshControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JwtService jwtService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setupMocks() {
+        when(jwtService.extractUsername("dummy.token.100")).thenReturn("asyncuser");
+        when(jwtService.isTokenValid(anyString(), any(), anyString()))
+                .thenAnswer(invocation -> "dummy.token.100".equals(invocation.getArgument(0))
+                        && JwtService.REFRESH_TOKEN_TYPE.equals(invocation.getArgument(2)));
+        when(jwtService.generateAccessToken(any())).thenReturn("mocked.access.token");
+        when(jwtService.generateRefreshToken(any())).thenReturn("mocked.async.refresh.token");
+    }
+
+    // the rotation completes on the refresh pool, so the response comes from the async dispatch
+    private ResultActions refresh(String token) throws Exception {
+        MvcResult result = mockMvc.perform(post("/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(new RefreshRequest(token, "device123"))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    // valid refresh token → same body as the servlet-thread controller
+    @Test
+    void refresh_validToken_returnsPair() throws Exception {
+        refresh("dummy.token.100")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessToken").value("mocked.access.token"))
+                .andExpect(jsonPath("$.refreshToken").value("mocked.async.refresh.token"));
+    }
+
+    // invalid token → 401 with the rejection reason
+    @Test
+    void refresh_invalidToken_returns401() throws Exception {
+        refresh("invalid.token.structure")
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().string("Refresh token not found"));
+    }
+}
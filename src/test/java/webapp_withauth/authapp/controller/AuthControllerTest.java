@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -15,10 +16,15 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import webapp_withauth.authapp.model.AuthRequest;
 import webapp_withauth.authapp.model.RegisterRequest;
 import webapp_withauth.authapp.model.User;
 import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.PasswordHashingExecutor;
+import webapp_withauth.authapp.security.PasswordHashingExecutor.HashingCapacityExceededException;
 import webapp_withauth.authapp.service.EmailService;
 
 import java.util.Collections;
@@ -28,6 +34,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -48,12 +55,23 @@ class AuthControllerTest {
         @MockBean
         private EmailService emailService;
 
+        @SpyBean
+        private PasswordHashingExecutor hashingExecutor;
+
         private final ObjectMapper mapper = new ObjectMapper();
 
         private Authentication buildAuth(User user) {
                 return new UsernamePasswordAuthenticationToken(user, user.getPassword(), Collections.emptyList());
         }
 
+        // login and register complete on the hashing pool, so the response comes from the async dispatch
+        private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+                MvcResult result = mockMvc.perform(builder)
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+                return mockMvc.perform(asyncDispatch(result));
+        }
+
         // valid credentials → expect 200 and tokens
         @Test
         @Sql(statements = {
@@ -82,7 +100,7 @@ class AuthControllerTest {
                 when(jwtService.generateAccessToken(any())).thenReturn("mock-access-token");
                 when(jwtService.generateRefreshToken(any())).thenReturn("mock-refresh-token");
 
-                mockMvc.perform(post("/auth/login")
+                performAsync(post("/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(request)))
                                 .andExpect(status().isOk())
@@ -106,7 +124,7 @@ class AuthControllerTest {
                 when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                                 .thenThrow(new BadCredentialsException("Bad credentials"));
 
-                mockMvc.perform(post("/auth/login")
+                performAsync(post("/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(request)))
                                 .andExpect(status().isUnauthorized());
@@ -128,7 +146,7 @@ class AuthControllerTest {
                 when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                                 .thenThrow(new BadCredentialsException("User not verified"));
 
-                mockMvc.perform(post("/auth/login")
+                performAsync(post("/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(request)))
                                 .andExpect(status().isUnauthorized());
@@ -152,7 +170,7 @@ class AuthControllerTest {
                 when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                                 .thenReturn(buildAuth(ghostUser));
 
-                mockMvc.perform(post("/auth/login")
+                performAsync(post("/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(request)))
                                 .andExpect(status().isUnauthorized());
@@ -167,7 +185,7 @@ class AuthControllerTest {
                 req.setPassword("securepass");
                 req.setConfirmPassword("securepass");
 
-                mockMvc.perform(post("/auth/register")
+                performAsync(post("/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(req)))
                                 .andExpect(status().isOk())
@@ -189,7 +207,7 @@ class AuthControllerTest {
                 req.setPassword("pass");
                 req.setConfirmPassword("pass");
 
-                mockMvc.perform(post("/auth/register")
+                performAsync(post("/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(req)))
                                 .andExpect(status().isBadRequest());
@@ -204,7 +222,7 @@ class AuthControllerTest {
                 req.setPassword("abc");
                 req.setConfirmPassword("xyz");
 
-                mockMvc.perform(post("/auth/register")
+                performAsync(post("/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(req)))
                                 .andExpect(status().isBadRequest())
@@ -225,7 +243,7 @@ class AuthControllerTest {
                 req.setPassword("newpass");
                 req.setConfirmPassword("newpass");
 
-                mockMvc.perform(post("/auth/register")
+                performAsync(post("/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(req)))
                                 .andExpect(status().isOk())
@@ -233,4 +251,23 @@ class AuthControllerTest {
 
                 verify(emailService, times(1)).send(eq("pending@example.com"), any(), contains("OTP"));
         }
-}
\ No newline at end of file
+
+        // hashing queue full → fast 503 with Retry-After, no authentication attempted
+        @Test
+        void login_hashingQueueFull_returns503() throws Exception {
+                AuthRequest request = new AuthRequest();
+                request.setUsername("busyuser");
+                request.setPassword("password");
+                request.setDeviceId("device123");
+
+                doThrow(new HashingCapacityExceededException("1")).when(hashingExecutor).submit(any());
+
+                mockMvc.perform(post("/auth/login")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(request)))
+                                .andExpect(status().isServiceUnavailable())
+                                .andExpect(header().string("Retry-After", "1"));
+
+                verifyNoInteractions(authenticationManager);
+        }
+}
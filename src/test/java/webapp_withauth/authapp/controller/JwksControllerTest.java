@@ -0,0 +1,101 @@
+package webapp_withauth.authapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import webapp_withauth.authapp.security.JwtService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "jwt.signing.algorithm=ES256")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class JwksControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private UserDetails user(String username) {
+        return User.builder()
+                .username(username)
+                .password("irrelevant")
+                .roles("USER")
+                .build();
+    }
+
+    // JWKS is public and cacheable
+    @Test
+    void jwks_returnsCacheableKeySet() throws Exception {
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(header().string("Cache-Control", "max-age=300, public"))
+                .andExpect(jsonPath("$.keys[0].kty").value("EC"))
+                .andExpect(jsonPath("$.keys[0].alg").value("ES256"));
+    }
+
+    // Matching If-None-Match → 304
+    @Test
+    void jwks_unchanged_returns304() throws Exception {
+        MvcResult first = mockMvc.perform(get("/.well-known/jwks.json")).andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/.well-known/jwks.json").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    // Access token is ES256-signed with a kid that the JWKS publishes
+    @Test
+    void accessToken_isSignedWithPublishedKey() throws Exception {
+        String token = jwtService.generateAccessToken(user("jwksuser"));
+        JsonNode header = mapper.readTree(
+                new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]), StandardCharsets.UTF_8));
+
+        String body = mockMvc.perform(get("/.well-known/jwks.json"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("ES256", header.get("alg").asText());
+        assertEquals(mapper.readTree(body).get("keys").get(0).get("kid").asText(), header.get("kid").asText());
+    }
+
+    // ES256 access token authenticates protected endpoints
+    @Test
+    @Sql(statements = {
+            "DELETE FROM users WHERE username = 'jwksuser'",
+            "INSERT INTO users (id, username, email, password, role, enabled) " +
+                    "VALUES (998, 'jwksuser', 'jwks@example.com', '$2a$10$validhashed', 'USER', true)"
+    })
+    void es256AccessToken_authenticates() throws Exception {
+        String token = jwtService.generateAccessToken(user("jwksuser"));
+
+        mockMvc.perform(get("/api/secure-endpoint").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    // Refresh tokens stay HMAC-signed and still verify
+    @Test
+    void refreshToken_staysHmac() {
+        String token = jwtService.generateRefreshToken(user("jwksuser"));
+
+        assertEquals("jwksuser", jwtService.verify(token).subject());
+    }
+}
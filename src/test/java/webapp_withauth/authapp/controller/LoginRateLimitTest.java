@@ -0,0 +1,76 @@
+package webapp_withauth.authapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import webapp_withauth.authapp.model.AuthRequest;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "rate-limit.login.enabled=true",
+        "rate-limit.login.per-ip.burst=3",
+        "rate-limit.login.per-ip.refill-interval=1h",
+        "rate-limit.login.per-username.burst=1",
+        "rate-limit.login.per-username.refill-interval=1h"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class LoginRateLimitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private AuthenticationManager authenticationManager;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private ResultActions login(String username) throws Exception {
+        AuthRequest request = new AuthRequest();
+        request.setUsername(username);
+        request.setPassword("wrong");
+        request.setDeviceId("device123");
+        return mockMvc.perform(post("/auth/login")
+                .with(req -> {
+                    req.setRemoteAddr("203.0.113.7");
+                    return req;
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(request)));
+    }
+
+    // Per-username then per-IP limits reject before authentication runs
+    @Test
+    void login_overLimit_returns429WithoutAuthenticating() throws Exception {
+        when(authenticationManager.authenticate(any())).thenThrow(new BadCredentialsException("Bad credentials"));
+
+        MvcResult alice = login("alice").andExpect(request().asyncStarted()).andReturn();
+        login("alice")
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3600"));
+        MvcResult bob = login("bob").andExpect(request().asyncStarted()).andReturn();
+        login("carol")
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+
+        // Accepted logins authenticate on the hashing pool: wait for their responses before counting
+        mockMvc.perform(asyncDispatch(alice)).andExpect(status().isUnauthorized());
+        mockMvc.perform(asyncDispatch(bob)).andExpect(status().isUnauthorized());
+        verify(authenticationManager, times(2)).authenticate(any());
+    }
+}
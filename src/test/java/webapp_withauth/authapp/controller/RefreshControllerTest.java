@@ -8,12 +8,24 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 import webapp_withauth.authapp.model.RefreshRequest;
 import webapp_withauth.authapp.repository.RefreshTokenRepository;
 import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.TokenDigests;
+import webapp_withauth.authapp.service.RefreshTokenService;
+import webapp_withauth.authapp.service.RefreshTokenService.TokenPair;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -22,6 +34,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -37,6 +50,15 @@ public class RefreshControllerTest {
     @Autowired
     private RefreshTokenRepository refreshTokenRepository;
 
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final Set<String> VALID_TOKENS = Set.of("dummy.token.100", "dummy.token.104", "dummy.token.107");
+    private static final AtomicInteger ISSUED = new AtomicInteger();
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     @BeforeEach
@@ -48,6 +70,9 @@ public class RefreshControllerTest {
                 case "dummy.token.101" -> "revokeduser";
                 case "dummy.token.102" -> "wrongdeviceuser";
                 case "dummy.token.103" -> "expireduser";
+                case "dummy.token.104" -> "graceuser";
+                case "dummy.token.105", "dummy.token.106" -> "reuseuser";
+                case "dummy.token.107" -> "raceuser";
                 default -> null;
             };
         });
@@ -55,19 +80,25 @@ public class RefreshControllerTest {
         when(jwtService.isTokenValid(anyString(), any(), anyString())).thenAnswer(invocation -> {
             String token = invocation.getArgument(0);
             String tokenType = invocation.getArgument(2);
-            return token.equals("dummy.token.100") && JwtService.REFRESH_TOKEN_TYPE.equals(tokenType);
+            return VALID_TOKENS.contains(token) && JwtService.REFRESH_TOKEN_TYPE.equals(tokenType);
         });
 
         when(jwtService.generateAccessToken(any())).thenReturn("mocked.access.token");
-        when(jwtService.generateRefreshToken(any())).thenReturn("mocked.refresh.token");
+        // Refresh tokens must be unique; rows are not cleaned up between tests
+        when(jwtService.generateRefreshToken(any())).thenAnswer(invocation -> {
+            UserDetails user = invocation.getArgument(0);
+            return user.getUsername().equals("testuser")
+                    ? "mocked.refresh.token"
+                    : "mocked.refresh." + user.getUsername() + "." + ISSUED.incrementAndGet();
+        });
     }
 
     // valid refresh token + device match → new access token
     @Test
     @Sql(statements = {
             "INSERT INTO users (id, username, email, password, role, enabled) VALUES (10, 'testuser', 'refresh@example.com', '$2a$10$validhashed', 'USER', true)",
-            "INSERT INTO refresh_token (id, username, token, expiry, revoked, ip, user_agent, device_id) " +
-                    "VALUES (100, 'testuser', 'dummy.token.100', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+            "INSERT INTO refresh_token (id, username, token_digest, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (100, 'testuser', '0eba30f688beb951114f2947c02acbd9bc5060e794344ce58e95d66b57d082b0', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
     })
     void refresh_validTokenAndDevice_returnsAccessToken() throws Exception {
         RefreshRequest request = new RefreshRequest("dummy.token.100", "device123");
@@ -79,8 +110,8 @@ public class RefreshControllerTest {
                 .andExpect(jsonPath("$.accessToken").exists())
                 .andExpect(jsonPath("$.refreshToken").value("mocked.refresh.token"));
 
-        assertFalse(refreshTokenRepository.findByToken("dummy.token.100").isPresent());
-        assertTrue(refreshTokenRepository.findByToken("mocked.refresh.token").isPresent());
+        assertFalse(isActive("dummy.token.100"));
+        assertTrue(isActive("mocked.refresh.token"));
     }
 
     // invalid token → 401
@@ -98,8 +129,8 @@ public class RefreshControllerTest {
     @Test
     @Sql(statements = {
             "INSERT INTO users (id, username, email, password, role, enabled) VALUES (11, 'revokeduser', 'revoked@example.com', '$2a$10$validhashed', 'USER', true)",
-            "INSERT INTO refresh_token (id, username, token, expiry, revoked, ip, user_agent, device_id) " +
-                    "VALUES (101, 'revokeduser', 'dummy.token.101', DATEADD('DAY', 1, CURRENT_TIMESTAMP), true, '127.0.0.1', 'JUnit', 'device123')"
+            "INSERT INTO refresh_token (id, username, token_digest, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (101, 'revokeduser', 'c77e5e2662e5f2f3646fd664c8d90ff2f1e5f96feb69b7b1ebe102d836afab60', DATEADD('DAY', 1, CURRENT_TIMESTAMP), true, '127.0.0.1', 'JUnit', 'device123')"
     })
     void refresh_revokedToken_returns401() throws Exception {
         RefreshRequest request = new RefreshRequest("dummy.token.101", "device123");
@@ -114,8 +145,8 @@ public class RefreshControllerTest {
     @Test
     @Sql(statements = {
             "INSERT INTO users (id, username, email, password, role, enabled) VALUES (12, 'wrongdeviceuser', 'wrongdevice@example.com', '$2a$10$validhashed', 'USER', true)",
-            "INSERT INTO refresh_token (id, username, token, expiry, revoked, ip, user_agent, device_id) " +
-                    "VALUES (102, 'wrongdeviceuser', 'dummy.token.102', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device999')"
+            "INSERT INTO refresh_token (id, username, token_digest, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (102, 'wrongdeviceuser', 'f3f1af505abc21e42196ab80f9b1a114037721d790b8c9aa7473c14f11b3b302', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device999')"
     })
     void refresh_deviceMismatch_returns401() throws Exception {
         RefreshRequest request = new RefreshRequest("dummy.token.102", "device123");
@@ -130,8 +161,8 @@ public class RefreshControllerTest {
     @Test
     @Sql(statements = {
             "INSERT INTO users (id, username, email, password, role, enabled) VALUES (13, 'expireduser', 'expired@example.com', '$2a$10$validhashed', 'USER', true)",
-            "INSERT INTO refresh_token (id, username, token, expiry, revoked, ip, user_agent, device_id) " +
-                    "VALUES (103, 'expireduser', 'dummy.token.103', DATEADD('MINUTE', -1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+            "INSERT INTO refresh_token (id, username, token_digest, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (103, 'expireduser', 'b690819a45567ee2d2d5a711db51049c86d83f2915cce55b9519673e46636c59', DATEADD('MINUTE', -1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
     })
     void refresh_expiredToken_returns401() throws Exception {
         RefreshRequest request = new RefreshRequest("dummy.token.103", "device123");
@@ -141,4 +172,88 @@ public class RefreshControllerTest {
                 .content(mapper.writeValueAsString(request)))
                 .andExpect(status().isUnauthorized());
     }
+
+    // same token refreshed again within the grace period → the same new pair
+    @Test
+    @Sql(statements = {
+            "INSERT INTO users (id, username, email, password, role, enabled) VALUES (14, 'graceuser', 'grace@example.com', '$2a$10$validhashed', 'USER', true)",
+            "INSERT INTO refresh_token (id, username, token_digest, family_id, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (104, 'graceuser', 'da57c2cb9a9f186af2f1f1bff8454556ce3b7a354969c855f0c39720c312c442', 'family-104', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+    })
+    void refresh_repeatedWithinGracePeriod_returnsSamePair() throws Exception {
+        RefreshRequest request = new RefreshRequest("dummy.token.104", "device123");
+
+        String first = mockMvc.perform(post("/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String second = mockMvc.perform(post("/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(mapper.readTree(first), mapper.readTree(second));
+        assertEquals("family-104", jdbcTemplate.queryForObject(
+                "SELECT family_id FROM refresh_token WHERE username = 'graceuser' AND rotated_at IS NULL", String.class));
+    }
+
+    // retired token used after the grace period → 401 and the whole family is revoked
+    @Test
+    @Sql(statements = {
+            "INSERT INTO users (id, username, email, password, role, enabled) VALUES (15, 'reuseuser', 'reuse@example.com', '$2a$10$validhashed', 'USER', true)",
+            "INSERT INTO refresh_token (id, username, token_digest, family_id, rotated_at, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (105, 'reuseuser', '456aee84a119d5d33ec9e9a29272be25ebd016b6776a4f23ed71f6070079d44b', 'family-105', DATEADD('MINUTE', -5, CURRENT_TIMESTAMP), DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')",
+            "INSERT INTO refresh_token (id, username, token_digest, family_id, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (106, 'reuseuser', 'f86e65d745dd72af5b913f8e7523e1f85afc1f061209c3e0ecd93e9cf9d2d784', 'family-105', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+    })
+    void refresh_retiredTokenAfterGracePeriod_revokesFamily() throws Exception {
+        RefreshRequest request = new RefreshRequest("dummy.token.105", "device123");
+
+        mockMvc.perform(post("/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(request)))
+                .andExpect(status().isUnauthorized());
+
+        assertFalse(isActive("dummy.token.106"));
+    }
+
+    // concurrent refreshes with one token → all succeed with the pair of a single rotation
+    @Test
+    @Sql(statements = {
+            "INSERT INTO users (id, username, email, password, role, enabled) VALUES (16, 'raceuser', 'race@example.com', '$2a$10$validhashed', 'USER', true)",
+            "INSERT INTO refresh_token (id, username, token_digest, family_id, expiry, revoked, ip, user_agent, device_id) " +
+                    "VALUES (107, 'raceuser', '62ebe1744919efbf7732882960ff87839f9505425d3d46ba6f8c8fed3540b18d', 'family-107', DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, '127.0.0.1', 'JUnit', 'device123')"
+    })
+    void refresh_concurrentWithSameToken_rotatesOnce() throws Exception {
+        int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<TokenPair>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return refreshTokenService.rotate("dummy.token.107", "device123", "127.0.0.1", "JUnit");
+                }));
+            }
+            start.countDown();
+
+            TokenPair first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<TokenPair> result : results) {
+                assertEquals(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM refresh_token WHERE username = 'raceuser' AND rotated_at IS NULL", Integer.class));
+    }
+
+    private boolean isActive(String refreshToken) {
+        return refreshTokenRepository.findActiveByDigestAndDevice(
+                TokenDigests.sha256Hex(refreshToken), "device123", LocalDateTime.now()).isPresent();
+    }
 }
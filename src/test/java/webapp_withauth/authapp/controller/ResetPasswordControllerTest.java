@@ -10,6 +10,9 @@ import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import webapp_withauth.authapp.model.PasswordResetToken;
 import webapp_withauth.authapp.model.User;
 import webapp_withauth.authapp.repository.PasswordResetTokenRepository;
@@ -25,7 +28,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -54,6 +59,14 @@ public class ResetPasswordControllerTest {
     @MockBean
     private EmailService emailService;
 
+    // Requests that reach the hashing pool answer from the async dispatch
+    private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
     // valid token → password updated
     @Test
     void resetPassword_validToken_updatesPassword() throws Exception {
@@ -68,6 +81,7 @@ public class ResetPasswordControllerTest {
                 .build();
 
         User user = new User();
+        user.setId(7L);
         user.setUsername("resetuser");
         user.setEmail(email);
         user.setPassword("oldpassword");
@@ -75,20 +89,52 @@ public class ResetPasswordControllerTest {
         when(resetTokenRepository.findByToken(token)).thenReturn(Optional.of(resetToken));
         when(userRepo.findByEmail(email)).thenReturn(Optional.of(user));
         when(encoder.encode(newPassword)).thenReturn("encodedNewPassword");
+        when(resetTokenRepository.consume(eq(token), any())).thenReturn(1);
+        when(userRepo.updatePassword(7L, "encodedNewPassword")).thenReturn(1);
 
-        mockMvc.perform(post("/auth/reset-password")
+        performAsync(post("/auth/reset-password")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(Map.of(
                         "token", token,
                         "newPassword", newPassword))))
                 .andExpect(status().isOk());
 
-        verify(userRepo).save(user);
+        verify(userRepo).updatePassword(7L, "encodedNewPassword");
+        verify(userRepo, never()).save(any());
         verify(refreshTokenRepository).deleteAllByUsername("resetuser");
         verify(resetTokenRepository).deleteByEmail(email);
         verify(emailService).send(eq(email), any(), contains("Your password was successfully reset"));
     }
 
+    // token consumed by a concurrent reset while this one waited for the pool → 410, password untouched
+    @Test
+    void resetPassword_tokenAlreadyConsumed_returns410() throws Exception {
+        String token = "raced-token";
+        String email = "raced@example.com";
+        PasswordResetToken resetToken = PasswordResetToken.builder()
+                .token(token)
+                .email(email)
+                .expiry(LocalDateTime.now().plusMinutes(5))
+                .build();
+        User user = User.builder().id(8L).username("raceduser").email(email).password("old").build();
+
+        when(resetTokenRepository.findByToken(token)).thenReturn(Optional.of(resetToken));
+        when(userRepo.findByEmail(email)).thenReturn(Optional.of(user));
+        when(encoder.encode(any())).thenReturn("encoded");
+        when(resetTokenRepository.consume(eq(token), any())).thenReturn(0);
+
+        performAsync(post("/auth/reset-password")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of(
+                        "token", token,
+                        "newPassword", "newpass123"))))
+                .andExpect(status().isGone());
+
+        verify(userRepo, never()).updatePassword(any(), any());
+        verify(refreshTokenRepository, never()).deleteAllByUsername("raceduser");
+        verify(emailService, never()).send(eq(email), any(), any());
+    }
+
     // expired token → 410
     @Test
     void resetPassword_expiredToken_returns410() throws Exception {
@@ -101,7 +147,7 @@ public class ResetPasswordControllerTest {
 
         when(resetTokenRepository.findByToken(token)).thenReturn(Optional.of(resetToken));
 
-        mockMvc.perform(post("/auth/reset-password")
+        performAsync(post("/auth/reset-password")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(Map.of(
                         "token", token,
@@ -145,7 +191,7 @@ public class ResetPasswordControllerTest {
 
     @Test
     void resetPassword_missingFields_returns400() throws Exception {
-        mockMvc.perform(post("/auth/reset-password")
+        performAsync(post("/auth/reset-password")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(Map.of("token", "some-token"))))
                 .andExpect(status().isBadRequest());
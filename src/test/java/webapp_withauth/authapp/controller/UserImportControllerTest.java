@@ -0,0 +1,131 @@
+package webapp_withauth.authapp.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.Sql.ExecutionPhase;
+import org.springframework.test.web.servlet.MockMvc;
+import webapp_withauth.authapp.repository.UserRepository;
+import webapp_withauth.authapp.security.JwtService;
+
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Sql(executionPhase = ExecutionPhase.BEFORE_TEST_CLASS, statements = {
+        "INSERT INTO users (id, username, email, password, role, enabled) " +
+                "VALUES (900, 'importadmin', 'importadmin@example.com', '$2a$10$validhashed', 'ADMIN', true)",
+        "INSERT INTO users (id, username, email, password, role, enabled) " +
+                "VALUES (901, 'existing', 'existing@example.com', '$2a$10$validhashed', 'USER', true)"
+})
+public class UserImportControllerTest {
+
+    private static final String BCRYPT_HASH = "$2a$10$7eqJtq98hPqEX7fNZaFWoO4Q13w9PO9uCzxeV6rV5pD4dIaIRZXsy";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private String adminJwt;
+    private String userJwt;
+
+    @BeforeEach
+    void setup() {
+        adminJwt = jwtService.generateAccessToken(User.withUsername("importadmin").password("x").roles("ADMIN").build());
+        userJwt = jwtService.generateAccessToken(User.withUsername("existing").password("x").roles("USER").build());
+    }
+
+    // NDJSON: plain and pre-hashed passwords are imported, taken and malformed rows are skipped
+    @Test
+    void importNdjson_importsValidRows_skipsDuplicatesAndInvalid() throws Exception {
+        String body = """
+                {"username":"nd1","email":"nd1@example.com","password":"secret-1"}
+                {"username":"nd2","email":"nd2@example.com","passwordHash":"%s","role":"ADMIN"}
+                {"username":"existing","email":"other@example.com","password":"secret-3"}
+                {"username":"nd4","email":"nd1@example.com","password":"secret-4"}
+                {"username":"nd5","email":"not-an-email","password":"secret-5"}
+                {not json
+                """.formatted(BCRYPT_HASH);
+
+        mockMvc.perform(post("/admin/users/import")
+                .header("Authorization", "Bearer " + adminJwt)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.duplicates").value(2))
+                .andExpect(jsonPath("$.invalid").value(2))
+                .andExpect(jsonPath("$.problems", hasItems(
+                        "line 3: username or email already exists",
+                        "line 4: username or email already exists",
+                        "line 5: email is missing or invalid")));
+
+        var nd1 = userRepo.findByUsername("nd1").orElseThrow();
+        assertTrue(passwordEncoder.matches("secret-1", nd1.getPassword()));
+        assertEquals("USER", nd1.getRole());
+        assertTrue(nd1.isEnabled());
+        assertEquals(BCRYPT_HASH, userRepo.findByUsername("nd2").orElseThrow().getPassword());
+        assertTrue(userRepo.findByUsername("nd4").isEmpty());
+    }
+
+    // CSV: columns by header name, quoted fields allowed
+    @Test
+    void importCsv_mapsColumnsByHeader() throws Exception {
+        String body = """
+                email,username,password,enabled
+                csv1@example.com,csv1,"pass,with,commas",true
+                csv2@example.com,csv2,secret,false
+                """;
+
+        mockMvc.perform(post("/admin/users/import")
+                .header("Authorization", "Bearer " + adminJwt)
+                .contentType("text/csv")
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2));
+
+        assertTrue(passwordEncoder.matches("pass,with,commas", userRepo.findByUsername("csv1").orElseThrow().getPassword()));
+        assertFalse(userRepo.findByUsername("csv2").orElseThrow().isEnabled());
+    }
+
+    // A CSV header without the required columns → 400
+    @Test
+    void importCsv_badHeader_returns400() throws Exception {
+        mockMvc.perform(post("/admin/users/import")
+                .header("Authorization", "Bearer " + adminJwt)
+                .contentType("text/csv")
+                .content("name,mail\nx,y\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // Only admins may import
+    @Test
+    void import_asUser_returns403() throws Exception {
+        mockMvc.perform(post("/admin/users/import")
+                .header("Authorization", "Bearer " + userJwt)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"username\":\"u\",\"email\":\"u@example.com\",\"password\":\"p\"}\n"))
+                .andExpect(status().isForbidden());
+        assertTrue(userRepo.findByUsername("u").isEmpty());
+    }
+}
@@ -13,6 +13,7 @@ import webapp_withauth.authapp.model.PasswordResetToken;
 import webapp_withauth.authapp.model.RefreshRequest;
 import webapp_withauth.authapp.repository.PasswordResetTokenRepository;
 import webapp_withauth.authapp.repository.RefreshTokenRepository;
+import webapp_withauth.authapp.security.TokenDigests;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -89,6 +90,6 @@ public class ValidateResetTokenControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string("Logged out"));
 
-        verify(refreshTokenRepository).deleteByToken("dummy.logout.token");
+        verify(refreshTokenRepository).deleteByTokenDigest(TokenDigests.sha256Hex("dummy.logout.token"));
     }
 }
\ No newline at end of file
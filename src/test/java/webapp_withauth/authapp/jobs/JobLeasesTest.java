@@ -0,0 +1,137 @@
+package webapp_withauth.authapp.jobs;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.context.ActiveProfiles;
+import webapp_withauth.authapp.repository.JobLeaseRepository;
+
+import java.time.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class JobLeasesTest {
+
+    private static final Duration INTERVAL = Duration.ofMinutes(5);
+
+    @Autowired
+    private JobLeaseRepository repo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MutableClock clock;
+    private SimpleMeterRegistry registryA;
+    private JobLeases nodeA;
+    private JobLeases nodeB;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.now());
+        registryA = new SimpleMeterRegistry();
+        nodeA = new JobLeases(repo, mock(TaskScheduler.class), registryA, Duration.ofSeconds(10), clock);
+        nodeB = new JobLeases(repo, mock(TaskScheduler.class), new SimpleMeterRegistry(), Duration.ofSeconds(10), clock);
+    }
+
+    // Two nodes ticking in the same interval → the job runs once
+    @Test
+    void sameInterval_onlyOneNodeRuns() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(nodeA.runIfLeased("same-interval", INTERVAL, runs::incrementAndGet));
+        assertFalse(nodeB.runIfLeased("same-interval", INTERVAL, runs::incrementAndGet));
+
+        assertEquals(1, runs.get());
+        assertEquals(1, registryA.get("auth.job.lease.held").tag("job", "same-interval").gauge().value());
+        assertEquals(1, registryA.get("auth.job.last.rows").tag("job", "same-interval").gauge().value());
+    }
+
+    // The lease runs out before the next tick, so the next interval is free for any node
+    @Test
+    void nextInterval_anyNodeMayRun() {
+        assertTrue(nodeA.runIfLeased("next-interval", INTERVAL, () -> 0));
+
+        clock.advance(INTERVAL);
+        expire("next-interval");
+
+        assertTrue(nodeB.runIfLeased("next-interval", INTERVAL, () -> 0));
+        assertEquals(0, registryA.get("auth.job.lease.held").tag("job", "next-interval").gauge().value());
+    }
+
+    // A holder that dies mid-run keeps nobody out for longer than its lease
+    @Test
+    void deadHolder_leaseFailsOver() {
+        assertTrue(nodeA.runIfLeased("fail-over", INTERVAL, () -> {
+            throw new IllegalStateException("node crashed");
+        }));
+        assertFalse(nodeB.runIfLeased("fail-over", INTERVAL, () -> 0));
+
+        expire("fail-over");
+
+        assertTrue(nodeB.runIfLeased("fail-over", INTERVAL, () -> 0));
+        assertEquals(1, registryA.get("auth.job.runs").tag("job", "fail-over").tag("outcome", "failed").counter().count());
+    }
+
+    // The lease is one interval minus the jitter, counted on the database's clock
+    @Test
+    void leaseLength_isIntervalMinusJitter() {
+        assertTrue(nodeA.runIfLeased("lease-length", INTERVAL, () -> 0));
+
+        long remainingSeconds = jdbcTemplate.queryForObject("SELECT DATEDIFF('SECOND', "
+                + "CAST(CURRENT_TIMESTAMP AT TIME ZONE 'UTC' AS TIMESTAMP), leased_until) FROM job_lease WHERE name = ?",
+                Long.class, "lease-length");
+        assertTrue(remainingSeconds > INTERVAL.minusSeconds(15).toSeconds()
+                && remainingSeconds <= INTERVAL.minusSeconds(10).toSeconds(), "remaining: " + remainingSeconds);
+    }
+
+    // A node whose clock runs an hour ahead still sees the lease as held
+    @Test
+    void clockSkew_doesNotLetSecondNodeIn() {
+        assertTrue(nodeA.runIfLeased("skew", INTERVAL, () -> 0));
+
+        JobLeases skewed = new JobLeases(repo, mock(TaskScheduler.class), new SimpleMeterRegistry(),
+                Duration.ofSeconds(10), Clock.offset(Clock.systemDefaultZone(), Duration.ofHours(1)));
+
+        assertFalse(skewed.runIfLeased("skew", INTERVAL, () -> 0));
+    }
+
+    // Time passing for the lease, as the database sees it
+    private void expire(String job) {
+        jdbcTemplate.update("UPDATE job_lease SET leased_until = leased_until - INTERVAL '1' HOUR WHERE name = ?", job);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -2,12 +2,17 @@ package webapp_withauth.authapp.jobs;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 import webapp_withauth.authapp.repository.PasswordResetTokenRepository;
 import webapp_withauth.authapp.repository.PendingUserRepository;
 import webapp_withauth.authapp.repository.RefreshTokenRepository;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.function.IntSupplier;
 
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class PendingUserCleanupJobTest {
@@ -15,6 +20,8 @@ public class PendingUserCleanupJobTest {
     private PendingUserRepository pendingUserRepo;
     private PasswordResetTokenRepository resetTokenRepo;
     private RefreshTokenRepository refreshTokenRepo;
+    private JobLeases jobLeases;
+    private RefreshTokenPartitions partitions;
     private PendingUserCleanupJob cleanupJob;
 
     @BeforeEach
@@ -22,28 +29,43 @@ public class PendingUserCleanupJobTest {
         pendingUserRepo = mock(PendingUserRepository.class);
         resetTokenRepo = mock(PasswordResetTokenRepository.class);
         refreshTokenRepo = mock(RefreshTokenRepository.class);
-        cleanupJob = new PendingUserCleanupJob(pendingUserRepo, resetTokenRepo, refreshTokenRepo);
+        jobLeases = mock(JobLeases.class);
+        // Leases are covered by JobLeasesTest; here every tick runs
+        doAnswer(inv -> ((IntSupplier) inv.getArgument(2)).getAsInt())
+                .when(jobLeases).runExclusive(any(), any(), any());
+        partitions = mock(RefreshTokenPartitions.class);
+        cleanupJob = new PendingUserCleanupJob(pendingUserRepo, resetTokenRepo, refreshTokenRepo, jobLeases, partitions);
     }
 
     // Manually invoke job methods without error
     @Test
     void manuallyInvokingAllJobMethods_runsWithoutException() {
-        when(pendingUserRepo.countExpired(any())).thenReturn(0L);
-
         cleanupJob.cleanupExpiredPendingUsers();
         cleanupJob.cleanExpiredResetTokens();
         cleanupJob.cleanExpiredRefreshTokens();
     }
 
-    // Cleanup expired pending users
+    // Cleanup expired pending users with a single delete
     @Test
     void expiredPendingUsers_areDeletedIfPresent() {
-        when(pendingUserRepo.countExpired(any())).thenReturn(3L);
+        when(pendingUserRepo.deleteExpired(any())).thenReturn(3);
 
         cleanupJob.cleanupExpiredPendingUsers();
 
-        verify(pendingUserRepo).countExpired(any());
         verify(pendingUserRepo).deleteExpired(any());
+        verifyNoMoreInteractions(pendingUserRepo);
+    }
+
+    // Each job runs under its own lease
+    @Test
+    void jobs_runUnderLeases() {
+        cleanupJob.cleanupExpiredPendingUsers();
+        cleanupJob.cleanExpiredResetTokens();
+        cleanupJob.cleanExpiredRefreshTokens();
+
+        verify(jobLeases).runExclusive(eq("pending-user-cleanup"), eq(Duration.ofMinutes(10)), any());
+        verify(jobLeases).runExclusive(eq("reset-token-cleanup"), eq(Duration.ofMinutes(5)), any());
+        verify(jobLeases).runExclusive(eq("refresh-token-cleanup"), eq(Duration.ofMinutes(5)), any());
     }
 
     // Expired reset and refresh tokens are cleaned
@@ -53,6 +75,40 @@ public class PendingUserCleanupJobTest {
         cleanupJob.cleanExpiredRefreshTokens();
 
         verify(resetTokenRepo).deleteAllByExpiryBefore(any(LocalDateTime.class));
-        verify(refreshTokenRepo).deleteAllByExpiryBefore(any(LocalDateTime.class));
+        verify(refreshTokenRepo).deleteExpiredChunk(any(LocalDateTime.class), eq(1000));
+    }
+
+    // Refresh tokens are deleted chunk by chunk until a partial chunk
+    @Test
+    void expiredRefreshTokens_deletedInChunks() {
+        ReflectionTestUtils.setField(cleanupJob, "chunkSize", 10);
+        ReflectionTestUtils.setField(cleanupJob, "chunkPause", Duration.ZERO);
+        when(refreshTokenRepo.deleteExpiredChunk(any(), eq(10))).thenReturn(10, 10, 4);
+
+        cleanupJob.cleanExpiredRefreshTokens();
+
+        verify(refreshTokenRepo, times(3)).deleteExpiredChunk(any(), eq(10));
+    }
+
+    // A run stops once its time budget is spent, even with full chunks left
+    @Test
+    void expiredRefreshTokens_stopAtTimeBudget() {
+        ReflectionTestUtils.setField(cleanupJob, "chunkSize", 10);
+        ReflectionTestUtils.setField(cleanupJob, "timeBudget", Duration.ZERO);
+        when(refreshTokenRepo.deleteExpiredChunk(any(), eq(10))).thenReturn(10);
+
+        cleanupJob.cleanExpiredRefreshTokens();
+
+        verify(refreshTokenRepo, times(1)).deleteExpiredChunk(any(), eq(10));
+    }
+
+    // With partitioned storage, expired refresh tokens are not deleted row by row
+    @Test
+    void expiredRefreshTokens_skippedWhenPartitioned() {
+        when(partitions.isActive()).thenReturn(true);
+
+        cleanupJob.cleanExpiredRefreshTokens();
+
+        verify(refreshTokenRepo, never()).deleteExpiredChunk(any(), anyInt());
     }
-}
\ No newline at end of file
+}
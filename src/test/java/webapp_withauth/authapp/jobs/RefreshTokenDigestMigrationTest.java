@@ -0,0 +1,80 @@
+package webapp_withauth.authapp.jobs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import webapp_withauth.authapp.security.TokenDigests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class RefreshTokenDigestMigrationTest {
+
+    @Autowired
+    private RefreshTokenDigestMigration migration;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Recreate a pre-digest table as migration V0 leaves it: raw tokens in a now nullable column, no digest
+    @BeforeEach
+    void addLegacyColumn() {
+        jdbcTemplate.execute("ALTER TABLE refresh_token ADD COLUMN token VARCHAR(1000)");
+        insertLegacy(200, "legacy.token.200");
+        insertLegacy(201, "legacy.token.201");
+    }
+
+    @AfterEach
+    void dropLegacyColumn() {
+        jdbcTemplate.update("DELETE FROM refresh_token WHERE id IN (200, 201)");
+        jdbcTemplate.execute("ALTER TABLE refresh_token DROP COLUMN IF EXISTS token");
+        migration.run();
+    }
+
+    // Background pass fills digests and clears raw tokens
+    @Test
+    void run_convertsLegacyRows() {
+        assertEquals(2, migration.run());
+
+        assertEquals(TokenDigests.sha256Hex("legacy.token.200"), digestOf(200));
+        assertEquals(TokenDigests.sha256Hex("legacy.token.201"), digestOf(201));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM refresh_token WHERE token IS NOT NULL", Integer.class));
+    }
+
+    // A row the background pass has not reached is converted on demand
+    @Test
+    void migrateIfLegacy_convertsSingleRow() {
+        migration.run();
+        insertLegacy(202, "legacy.token.202");
+
+        assertTrue(migration.migrateIfLegacy("legacy.token.202"));
+        assertFalse(migration.migrateIfLegacy("unknown.token"));
+        assertEquals(TokenDigests.sha256Hex("legacy.token.202"), digestOf(202));
+        jdbcTemplate.update("DELETE FROM refresh_token WHERE id = 202");
+    }
+
+    // Right after startup, before the background pass: a legacy token is still converted on refresh
+    @Test
+    void migrateIfLegacy_beforeRun_convertsRow() {
+        RefreshTokenDigestMigration startingUp = new RefreshTokenDigestMigration(jdbcTemplate);
+        startingUp.detect();
+
+        assertTrue(startingUp.migrateIfLegacy("legacy.token.200"));
+        assertEquals(TokenDigests.sha256Hex("legacy.token.200"), digestOf(200));
+    }
+
+    private void insertLegacy(long id, String token) {
+        jdbcTemplate.update("INSERT INTO refresh_token (id, username, token, expiry, revoked, device_id) "
+                + "VALUES (?, 'legacyuser', ?, DATEADD('DAY', 1, CURRENT_TIMESTAMP), false, 'device123')", id, token);
+    }
+
+    private String digestOf(long id) {
+        return jdbcTemplate.queryForObject("SELECT token_digest FROM refresh_token WHERE id = ?", String.class, id);
+    }
+}
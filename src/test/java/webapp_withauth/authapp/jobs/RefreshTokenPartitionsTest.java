@@ -0,0 +1,106 @@
+package webapp_withauth.authapp.jobs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.config.SchemaMigrations;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest(properties = "refresh-tokens.partitioning.enabled=true")
+@ActiveProfiles("test")
+public class RefreshTokenPartitionsTest {
+
+    @Autowired
+    private RefreshTokenPartitions partitions;
+
+    // H2 keeps the plain table even when partitioning is requested
+    @Test
+    void nonPostgres_fallsBackToPlainTable() {
+        assertFalse(partitions.isActive());
+    }
+
+    // Partition names round-trip to the day they cover
+    @Test
+    void partitionName_roundTrips() {
+        LocalDate day = LocalDate.of(2025, 3, 9);
+
+        assertEquals("refresh_token_p20250309", RefreshTokenPartitions.partitionName(day));
+        assertEquals(day, RefreshTokenPartitions.partitionDay("refresh_token_p20250309"));
+        assertNull(RefreshTokenPartitions.partitionDay("refresh_token"));
+        assertNull(RefreshTokenPartitions.partitionDay("refresh_token_pdefault"));
+    }
+
+    // Needs a scratch database, e.g. POSTGRES_TEST_URL=jdbc:postgresql://localhost:5432/authdb_test.
+    // Runs in a schema of its own, dropped afterwards, since the conversion cannot be undone.
+    @Test
+    @EnabledIfEnvironmentVariable(named = "POSTGRES_TEST_URL", matches = ".+")
+    void convert_onPostgres_partitionsAndKeepsLiveRows() throws Exception {
+        String url = System.getenv("POSTGRES_TEST_URL");
+        String user = System.getenv().getOrDefault("POSTGRES_TEST_USER", "postgres");
+        String password = System.getenv().getOrDefault("POSTGRES_TEST_PASSWORD", "postgres");
+        String schema = "partitions_" + UUID.randomUUID().toString().replace("-", "");
+        JdbcTemplate admin = new JdbcTemplate(new DriverManagerDataSource(url, user, password));
+        admin.execute("CREATE SCHEMA " + schema);
+        try {
+            DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                    url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema, user, password);
+            new SchemaMigrations(dataSource).migrate();
+            JdbcTemplate postgres = new JdbcTemplate(dataSource);
+            insertToken(postgres, 1, "live", LocalDateTime.now().plusDays(2));
+            insertToken(postgres, 2, "expired", LocalDateTime.now().minusDays(2));
+
+            RefreshTokenPartitions first = partitions(dataSource);
+            first.init();
+
+            assertTrue(first.isActive());
+            assertEquals("p", postgres.queryForObject("SELECT CAST(relkind AS TEXT) FROM pg_class "
+                    + "WHERE relname = 'refresh_token' AND relnamespace = CAST(current_schema() AS regnamespace)",
+                    String.class));
+            assertEquals(List.of("live"), postgres.queryForList("SELECT token_digest FROM refresh_token", String.class));
+            // The digest stays unique per partition key, as the conversion rebuilds it on (token_digest, expiry)
+            LocalDateTime liveExpiry = postgres.queryForObject("SELECT expiry FROM refresh_token WHERE id = 1",
+                    LocalDateTime.class);
+            assertThrows(DuplicateKeyException.class, () -> insertToken(postgres, 3, "live", liveExpiry));
+
+            // Already partitioned: a restart must not queue behind traffic for the exclusive lock
+            try (Connection traffic = dataSource.getConnection(); Statement statement = traffic.createStatement()) {
+                traffic.setAutoCommit(false);
+                statement.execute("LOCK TABLE refresh_token IN ROW EXCLUSIVE MODE");
+                RefreshTokenPartitions second = partitions(dataSource);
+                assertTimeoutPreemptively(Duration.ofSeconds(5), second::init);
+                assertTrue(second.isActive());
+                traffic.rollback();
+            }
+        } finally {
+            admin.execute("DROP SCHEMA " + schema + " CASCADE");
+        }
+    }
+
+    private static RefreshTokenPartitions partitions(DriverManagerDataSource dataSource) {
+        return new RefreshTokenPartitions(new JdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), mock(JobLeases.class),
+                true, 3, Duration.ofHours(1));
+    }
+
+    private static void insertToken(JdbcTemplate jdbcTemplate, long id, String digest, LocalDateTime expiry) {
+        jdbcTemplate.update("INSERT INTO refresh_token (id, username, token_digest, family_id, expiry, revoked, version) "
+                + "VALUES (?, 'partitionuser', ?, ?, ?, false, 0)", id, digest, "family-" + id, expiry);
+    }
+}
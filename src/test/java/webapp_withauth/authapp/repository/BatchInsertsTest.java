@@ -0,0 +1,67 @@
+package webapp_withauth.authapp.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import webapp_withauth.authapp.jobs.JobLeases;
+import webapp_withauth.authapp.model.RefreshToken;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+public class BatchInsertsTest {
+
+    @Autowired
+    private BatchInserts batchInserts;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepo;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    // Statistics are global: keep the cleanup jobs that tick at startup out of the count
+    @MockBean
+    private JobLeases jobLeases;
+
+    // 250 rows go out as a handful of JDBC batches plus a few sequence calls, not 250 statements
+    @Test
+    void persistAll_insertsInBatches() {
+        List<RefreshToken> tokens = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            tokens.add(RefreshToken.builder()
+                    .username("batch-user")
+                    .tokenDigest(UUID.randomUUID().toString())
+                    .familyId(UUID.randomUUID().toString())
+                    .expiry(LocalDateTime.now().plusDays(1))
+                    .build());
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertEquals(250, batchInserts.persistAll(tokens));
+
+        int batches = (250 + batchInserts.batchSize() - 1) / batchInserts.batchSize();
+        // One prepared statement per batch, plus one nextval per block of 100 ids
+        assertTrue(statistics.getPrepareStatementCount() <= batches + 4,
+                "statements: " + statistics.getPrepareStatementCount());
+        Set<Long> ids = new HashSet<>();
+        tokens.forEach(t -> ids.add(t.getId()));
+        assertEquals(250, ids.size());
+        assertEquals(250, refreshTokenRepo.findAll().stream()
+                .filter(t -> "batch-user".equals(t.getUsername())).count());
+    }
+}
@@ -0,0 +1,75 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessTokenCacheTest {
+
+    private final UserDetails user = User.builder()
+            .username("cacheduser")
+            .password("$2a$10$secrethash")
+            .roles("USER")
+            .build();
+
+    private VerifiedToken tokenExpiringAt(Instant expiry) {
+        return new VerifiedToken("cacheduser", JwtService.ACCESS_TOKEN_TYPE, Instant.now(), expiry,
+                List.of("ROLE_USER"), true);
+    }
+
+    // Cached entry is returned without the password hash
+    @Test
+    void put_thenGet_returnsPrincipalWithoutCredentials() {
+        AccessTokenCache cache = new AccessTokenCache(true, 10, new SimpleMeterRegistry());
+
+        cache.put("token-a", tokenExpiringAt(Instant.now().plusSeconds(60)), user);
+
+        AccessTokenCache.Entry entry = cache.get("token-a");
+        assertNotNull(entry);
+        assertEquals("cacheduser", entry.principal().getUsername());
+        assertEquals("", entry.principal().getPassword());
+        assertNull(cache.get("token-b"));
+    }
+
+    // Entry never outlives the token's exp
+    @Test
+    void expiredToken_isNotServed() {
+        AccessTokenCache cache = new AccessTokenCache(true, 10, new SimpleMeterRegistry());
+
+        cache.put("token-a", tokenExpiringAt(Instant.now().minusSeconds(1)), user);
+
+        assertNull(cache.get("token-a"));
+    }
+
+    // Hit/miss counters are published
+    @Test
+    void metrics_areRegistered() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AccessTokenCache cache = new AccessTokenCache(true, 10, registry);
+
+        cache.put("token-a", tokenExpiringAt(Instant.now().plusSeconds(60)), user);
+        cache.get("token-a");
+        cache.get("token-b");
+
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "accessTokens").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "accessTokens").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    // Disabled cache never stores anything
+    @Test
+    void disabledCache_isNoOp() {
+        AccessTokenCache cache = new AccessTokenCache(false, 10, new SimpleMeterRegistry());
+
+        cache.put("token-a", tokenExpiringAt(Instant.now().plusSeconds(60)), user);
+
+        assertNull(cache.get("token-a"));
+    }
+}
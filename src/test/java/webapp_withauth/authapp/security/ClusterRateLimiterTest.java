@@ -0,0 +1,222 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import webapp_withauth.authapp.repository.RateLimitCounterRepository;
+import webapp_withauth.authapp.service.EmailService;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "rate-limit.cluster.enabled=true",
+        "rate-limit.cluster.sync-interval=1h",
+        "rate-limit.cluster.forgot-password.max-hits=2"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ClusterRateLimiterTest {
+
+    private static final String PATH = "/auth/register";
+
+    @Autowired
+    private RateLimitCounterRepository repo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private EmailService emailService;
+
+    // Middle of a one-hour window, so the previous window carries no weight
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2030-01-01T10:00:00Z"));
+
+    private ClusterRateLimiter node(long maxHits) {
+        return node(maxHits, 1000);
+    }
+
+    private ClusterRateLimiter node(long maxHits, long maxKeys) {
+        return node(repo, maxHits, maxKeys);
+    }
+
+    private ClusterRateLimiter node(RateLimitCounterRepository repo, long maxHits, long maxKeys) {
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        return new ClusterRateLimiter(repo, true,
+                Map.of(PATH, new ClusterRateLimiter.EndpointLimit("register", maxHits, Duration.ofHours(1))),
+                maxKeys, new SimpleMeterRegistry(), clock);
+    }
+
+    private long storedHits(String key) {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(hits), 0) FROM rate_limit_counter WHERE id LIKE ?",
+                Long.class, "register:" + key + "@%");
+    }
+
+    // Local limit applies before any sync; sync adds the local hits to the shared row
+    @Test
+    void tryAcquire_limitsAndSyncs() {
+        ClusterRateLimiter node = node(2);
+
+        assertEquals(0, node.tryAcquire(PATH, "192.0.2.1"));
+        assertEquals(0, node.tryAcquire(PATH, "192.0.2.1"));
+        assertEquals(3600, node.tryAcquire(PATH, "192.0.2.1"));
+        node.sync();
+
+        assertEquals(2, storedHits("192.0.2.1"));
+    }
+
+    // Hits taken on another replica count once synced
+    @Test
+    void tryAcquire_seesOtherNodesAfterSync() {
+        ClusterRateLimiter a = node(3);
+        ClusterRateLimiter b = node(3);
+
+        assertEquals(0, a.tryAcquire(PATH, "192.0.2.2"));
+        assertEquals(0, b.tryAcquire(PATH, "192.0.2.2"));
+        assertEquals(0, b.tryAcquire(PATH, "192.0.2.2"));
+        b.sync();
+        a.sync();
+
+        assertTrue(a.tryAcquire(PATH, "192.0.2.2") > 0);
+        assertEquals(3, storedHits("192.0.2.2"));
+    }
+
+    // Previous window still weighs in, then fades out
+    @Test
+    void tryAcquire_slidingWindow() {
+        ClusterRateLimiter node = node(4);
+        now.set(Instant.parse("2030-01-01T10:59:00Z"));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, node.tryAcquire(PATH, "192.0.2.3"));
+        }
+
+        now.set(Instant.parse("2030-01-01T11:01:00Z"));
+        assertTrue(node.tryAcquire(PATH, "192.0.2.3") > 0);
+
+        now.set(Instant.parse("2030-01-01T11:45:00Z"));
+        assertEquals(0, node.tryAcquire(PATH, "192.0.2.3"));
+    }
+
+    // Spraying addresses stays within the key cap, and hits of evicted keys still reach the shared rows
+    @Test
+    void tryAcquire_manyClients_boundedAndStillCounted() {
+        ClusterRateLimiter node = node(5, 50);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(0, node.tryAcquire(PATH, "203.0.113." + (i % 250) + "-" + i));
+        }
+
+        assertTrue(node.trackedKeys() <= 50, "keys: " + node.trackedKeys());
+        node.sync();
+
+        assertEquals(500, jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(hits), 0) FROM rate_limit_counter WHERE id LIKE 'register:203.0.113.%'", Long.class));
+    }
+
+    // A sync reads back only the keys used since the previous one
+    @Test
+    void sync_readsBackOnlyTouchedKeys() {
+        RateLimitCounterRepository mocked = mock(RateLimitCounterRepository.class);
+        ClusterRateLimiter node = node(mocked, 5, 1000);
+        node.tryAcquire(PATH, "192.0.2.5");
+        node.tryAcquire(PATH, "192.0.2.6");
+        node.sync();
+
+        node.tryAcquire(PATH, "192.0.2.6");
+        node.sync();
+        node.sync();
+
+        InOrder reads = inOrder(mocked);
+        reads.verify(mocked).findHits(argThat(ids -> ids.size() == 2));
+        reads.verify(mocked).findHits(List.of("register:192.0.2.6@" + now.get().getEpochSecond()));
+        reads.verify(mocked).findHits(List.of());
+    }
+
+    // Concurrent requests for one key never take it past the limit on a node
+    @Test
+    void tryAcquire_concurrent_neverOvershoots() throws Exception {
+        ClusterRateLimiter node = node(50);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                results.add(pool.submit(() -> node.tryAcquire(PATH, "192.0.2.7")));
+            }
+            long allowed = 0;
+            for (Future<Long> result : results) {
+                allowed += result.get() == 0 ? 1 : 0;
+            }
+            assertEquals(50, allowed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Unlimited paths pass through
+    @Test
+    void tryAcquire_unknownPath_allows() {
+        assertEquals(0, node(1).tryAcquire("/auth/logout", "192.0.2.4"));
+    }
+
+    // Filter rejects before the controller once the endpoint limit is used up
+    @Test
+    void forgotPassword_overLimit_returns429() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/auth/forgot-password").param("email", "nobody@example.com")
+                    .with(req -> {
+                        req.setRemoteAddr("198.51.100.20");
+                        return req;
+                    }))
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(post("/auth/forgot-password").param("email", "nobody@example.com")
+                .with(req -> {
+                    req.setRemoteAddr("198.51.100.20");
+                    return req;
+                }))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+}
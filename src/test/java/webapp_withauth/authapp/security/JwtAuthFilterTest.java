@@ -3,6 +3,7 @@ package webapp_withauth.authapp.security;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.mock.web.MockFilterChain;
@@ -12,6 +13,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
@@ -20,13 +22,13 @@ import java.lang.reflect.Field;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class JwtAuthFilterTest {
 
     private JwtService jwtService;
     private UserDetailsService userDetailsService;
+    private AccessTokenRevocations revocations;
     private JwtAuthFilter jwtAuthFilter;
     private UserDetails user;
     private final String secret = "abcdefghijklmnopqrstuvwxyz0123456789!@#$";
@@ -34,9 +36,12 @@ public class JwtAuthFilterTest {
 
     @BeforeEach
     void setUp() throws Exception {
+        SecurityContextHolder.clearContext();
         jwtService = spy(new JwtService());
         userDetailsService = mock(UserDetailsService.class);
-        jwtAuthFilter = new JwtAuthFilter(jwtService, userDetailsService);
+        revocations = new AccessTokenRevocations(jwtService);
+        jwtAuthFilter = new JwtAuthFilter(jwtService, userDetailsService, revocations,
+                new AccessTokenCache(true, 100, new SimpleMeterRegistry()));
 
         key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         user = User.builder()
@@ -48,10 +53,16 @@ public class JwtAuthFilterTest {
         Field secretField = JwtService.class.getDeclaredField("secret");
         secretField.setAccessible(true);
         secretField.set(jwtService, secret);
+        jwtService.init();
     }
 
     private String generateToken(long millisOffset) {
+        return generateToken(millisOffset, JwtService.ACCESS_TOKEN_TYPE);
+    }
+
+    private String generateToken(long millisOffset, String tokenType) {
         return Jwts.builder()
+                .claim("token_type", tokenType)
                 .setSubject(user.getUsername())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + millisOffset))
@@ -64,8 +75,6 @@ public class JwtAuthFilterTest {
     void validToken_setsAuthentication() throws Exception {
         String token = generateToken(15 * 60 * 1000);
         when(userDetailsService.loadUserByUsername("testuser")).thenReturn(user);
-        doReturn("testuser").when(jwtService).extractUsername(token);
-        doReturn(true).when(jwtService).isTokenValid(eq(token), any(), eq(JwtService.ACCESS_TOKEN_TYPE));
 
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Authorization", "Bearer " + token);
@@ -76,6 +85,54 @@ public class JwtAuthFilterTest {
 
         assertNotNull(SecurityContextHolder.getContext().getAuthentication());
         assertEquals("testuser", SecurityContextHolder.getContext().getAuthentication().getName());
+        verify(jwtService, times(1)).verify(token);
+        verify(jwtService, never()).extractUsername(any());
+        verify(jwtService, never()).isTokenValid(any(), any(), any());
+    }
+
+    // Same token twice → second request served from the cache
+    @Test
+    void repeatedToken_skipsVerificationAndLookup() throws Exception {
+        String token = generateToken(15 * 60 * 1000);
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(user);
+
+        for (int i = 0; i < 2; i++) {
+            SecurityContextHolder.clearContext();
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Authorization", "Bearer " + token);
+            jwtAuthFilter.doFilterInternal(request, new MockHttpServletResponse(), new MockFilterChain());
+
+            assertEquals("testuser", SecurityContextHolder.getContext().getAuthentication().getName());
+        }
+
+        verify(jwtService, times(1)).verify(token);
+        verify(userDetailsService, times(1)).loadUserByUsername("testuser");
+    }
+
+    // Cached token revoked afterwards → no authentication
+    @Test
+    void cachedToken_revoked_noAuthentication() throws Exception {
+        String token = Jwts.builder()
+                .claim("token_type", JwtService.ACCESS_TOKEN_TYPE)
+                .setSubject(user.getUsername())
+                .setIssuedAt(new Date(System.currentTimeMillis() - 60 * 1000))
+                .setExpiration(new Date(System.currentTimeMillis() + 15 * 60 * 1000))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(user);
+
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        first.addHeader("Authorization", "Bearer " + token);
+        jwtAuthFilter.doFilterInternal(first, new MockHttpServletResponse(), new MockFilterChain());
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+
+        SecurityContextHolder.clearContext();
+        revocations.revokeAll("testuser");
+
+        MockHttpServletRequest second = new MockHttpServletRequest();
+        second.addHeader("Authorization", "Bearer " + token);
+        jwtAuthFilter.doFilterInternal(second, new MockHttpServletResponse(), new MockFilterChain());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
     }
 
     // No token → pass through
@@ -94,8 +151,6 @@ public class JwtAuthFilterTest {
     @Test
     void expiredToken_noAuthentication() throws Exception {
         String token = generateToken(-1000);
-        doReturn("testuser").when(jwtService).extractUsername(token);
-        doReturn(false).when(jwtService).isTokenValid(eq(token), any(), eq(JwtService.ACCESS_TOKEN_TYPE));
 
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Authorization", "Bearer " + token);
@@ -105,6 +160,85 @@ public class JwtAuthFilterTest {
         jwtAuthFilter.doFilterInternal(request, response, chain);
 
         assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    // Refresh token used as bearer → no authentication, no user lookup
+    @Test
+    void refreshToken_noAuthentication() throws Exception {
+        String token = generateToken(15 * 60 * 1000, JwtService.REFRESH_TOKEN_TYPE);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        jwtAuthFilter.doFilterInternal(request, response, chain);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    // Stateless mode → principal built from claims, no user lookup
+    @Test
+    void statelessMode_authenticatesFromClaims() throws Exception {
+        ReflectionTestUtils.setField(jwtAuthFilter, "statelessAuth", true);
+        String token = jwtService.generateAccessToken(user);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        jwtAuthFilter.doFilterInternal(request, response, chain);
+
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals("testuser", SecurityContextHolder.getContext().getAuthentication().getName());
+        assertTrue(SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
+                .anyMatch(a -> a.getAuthority().equals("ROLE_USER")));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    // Stateless mode, token without role claims → falls back to the user lookup
+    @Test
+    void statelessMode_legacyToken_fallsBackToLookup() throws Exception {
+        ReflectionTestUtils.setField(jwtAuthFilter, "statelessAuth", true);
+        String token = generateToken(15 * 60 * 1000);
+        when(userDetailsService.loadUserByUsername("testuser")).thenReturn(user);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        jwtAuthFilter.doFilterInternal(request, response, chain);
+
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(userDetailsService).loadUserByUsername("testuser");
+    }
+
+    // Token issued before a revocation → no authentication
+    @Test
+    void revokedToken_noAuthentication() throws Exception {
+        ReflectionTestUtils.setField(jwtAuthFilter, "statelessAuth", true);
+        String token = Jwts.builder()
+                .claim("token_type", JwtService.ACCESS_TOKEN_TYPE)
+                .setSubject(user.getUsername())
+                .setIssuedAt(new Date(System.currentTimeMillis() - 60 * 1000))
+                .setExpiration(new Date(System.currentTimeMillis() + 15 * 60 * 1000))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+        revocations.revokeAll("testuser");
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        jwtAuthFilter.doFilterInternal(request, response, chain);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
     }
 
     // Token with invalid signature → reject
@@ -112,7 +246,7 @@ public class JwtAuthFilterTest {
     void invalidSignatureToken_noAuthentication() throws Exception {
         String token = generateToken(15 * 60 * 1000);
         doThrow(new io.jsonwebtoken.security.SignatureException("Invalid signature"))
-                .when(jwtService).extractUsername(any());
+                .when(jwtService).verify(any());
 
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Authorization", "Bearer " + token);
@@ -8,9 +8,9 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.time.Instant;
 import java.util.Date;
+import java.util.List;
 import java.security.Key;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,7 +22,7 @@ class JwtServiceTest {
     public JwtServiceTest() {
         jwtService = new JwtService();
         setField(jwtService, "secret", "supersecurelongenoughsecretkey123456");
-        callValidateSecretInternal(jwtService);
+        jwtService.init();
     }
 
     private void setField(Object target, String fieldName, String value) {
@@ -35,16 +35,6 @@ class JwtServiceTest {
         }
     }
 
-    private void callValidateSecretInternal(JwtService jwtService) {
-        try {
-            Method method = JwtService.class.getDeclaredMethod("validateSecretInternal");
-            method.setAccessible(true);
-            method.invoke(jwtService);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private UserDetails user() {
         return User.builder()
                 .username("testuser")
@@ -77,6 +67,31 @@ class JwtServiceTest {
         assertTrue(validAsRefresh);
     }
 
+    // Single-pass verification exposes the claims needed by the filter
+    @Test
+    void verify_returnsVerifiedClaims() {
+        String token = jwtService.generateAccessToken(user());
+
+        VerifiedToken verified = jwtService.verify(token);
+
+        assertEquals("testuser", verified.subject());
+        assertTrue(verified.isType(JwtService.ACCESS_TOKEN_TYPE));
+        assertNotNull(verified.issuedAt());
+        assertTrue(verified.expiresAt().isAfter(Instant.now()));
+        assertEquals(List.of("ROLE_USER"), verified.roles());
+        assertEquals(Boolean.TRUE, verified.enabled());
+        assertTrue(verified.carriesAuthorities());
+    }
+
+    // Tampered signature fails verification
+    @Test
+    void verify_tamperedToken_shouldThrow() {
+        String token = jwtService.generateAccessToken(user());
+        String tampered = token.substring(0, token.length() - 3) + "abc";
+
+        assertThrows(JwtException.class, () -> jwtService.verify(tampered));
+    }
+
     // Invalid/malformed token
     @Test
     void malformedToken_shouldThrow() {
@@ -0,0 +1,64 @@
+package webapp_withauth.authapp.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoginRateLimitFilterTest {
+
+    private final LoginRateLimitFilter filter = new LoginRateLimitFilter(
+            new LoginRateLimiter(true,
+                    new LoginRateLimiter.Limit(10, Duration.ofSeconds(1)),
+                    new LoginRateLimiter.Limit(10, Duration.ofSeconds(1)),
+                    1000, Duration.ofMinutes(15), new SimpleMeterRegistry(), System::nanoTime),
+            new JsonFactory(), null);
+
+    // A non-blocking reader of the replayed body gets every byte, then the end-of-body callback
+    @Test
+    void replayedBody_supportsReadListener() throws Exception {
+        String body = "{\"username\":\"alice\",\"password\":\"secret\"}";
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/login");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        AtomicReference<ServletRequest> passed = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> passed.set(req));
+
+        ServletInputStream in = passed.get().getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        AtomicReference<Boolean> complete = new AtomicReference<>(false);
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                while (in.isReady() && !in.isFinished()) {
+                    read.write(in.read());
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                complete.set(true);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t);
+            }
+        });
+
+        assertTrue(complete.get());
+        assertEquals(body, read.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,71 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoginRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(-5_000_000_000L);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private LoginRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new LoginRateLimiter(true,
+                new LoginRateLimiter.Limit(3, Duration.ofSeconds(10)),
+                new LoginRateLimiter.Limit(2, Duration.ofSeconds(30)),
+                1000, Duration.ofMinutes(15), registry, now::get);
+    }
+
+    // Burst is allowed, the next attempt waits one refill interval
+    @Test
+    void tryAcquireIp_burstThenWait() {
+        assertEquals(0, limiter.tryAcquireIp("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquireIp("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquireIp("10.0.0.1"));
+
+        assertEquals(Duration.ofSeconds(10).toNanos(), limiter.tryAcquireIp("10.0.0.1"));
+        assertEquals(1, registry.get("auth.login.rate_limited").tag("key", "ip").counter().count());
+    }
+
+    // One token comes back per refill interval
+    @Test
+    void tryAcquireIp_refills() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquireIp("10.0.0.1");
+        }
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertEquals(0, limiter.tryAcquireIp("10.0.0.1"));
+        assertTrue(limiter.tryAcquireIp("10.0.0.1") > 0);
+    }
+
+    // Keys and key types are independent
+    @Test
+    void buckets_areIndependent() {
+        assertEquals(0, limiter.tryAcquireUsername("alice"));
+        assertEquals(0, limiter.tryAcquireUsername("alice"));
+        assertTrue(limiter.tryAcquireUsername("alice") > 0);
+
+        assertEquals(0, limiter.tryAcquireUsername("bob"));
+        assertEquals(0, limiter.tryAcquireIp("alice"));
+    }
+
+    // Rejections do not push the next allowed attempt further out
+    @Test
+    void rejections_doNotConsume() {
+        limiter.tryAcquireUsername("alice");
+        limiter.tryAcquireUsername("alice");
+        long first = limiter.tryAcquireUsername("alice");
+        long second = limiter.tryAcquireUsername("alice");
+
+        assertEquals(first, second);
+    }
+}
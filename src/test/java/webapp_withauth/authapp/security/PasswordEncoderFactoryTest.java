@@ -0,0 +1,111 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordEncoderFactoryTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private PasswordEncoderFactory factory(String algorithm, boolean calibrate, Duration budget) {
+        return new PasswordEncoderFactory(algorithm, calibrate, budget, 1, 4, 6, 1, 3, 1024, registry);
+    }
+
+    // Fixed cost → {bcrypt}-prefixed hash at that cost
+    @Test
+    void create_withoutCalibration_usesConfiguredCost() {
+        PasswordEncoder encoder = factory("bcrypt", false, Duration.ofMillis(250)).create();
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(hash.startsWith("{bcrypt}$2a$04$"));
+        assertTrue(encoder.matches("secret", hash));
+        assertEquals(4, registry.get("auth.password.hash.cost").tag("algorithm", "bcrypt").gauge().value());
+    }
+
+    // Generous budget → climbs to the ceiling and records each measured cost
+    @Test
+    void calibrate_generousBudget_choosesMaxCost() {
+        PasswordEncoder encoder = factory("bcrypt", true, Duration.ofSeconds(10)).create();
+
+        assertTrue(encoder.encode("secret").startsWith("{bcrypt}$2a$06$"));
+        assertEquals(6, registry.get("auth.password.hash.cost").tag("algorithm", "bcrypt").gauge().value());
+        assertEquals(3, registry.get("auth.password.hash.calibration").tag("algorithm", "bcrypt").timeGauges().size());
+    }
+
+    // Budget below the floor → stays at the floor
+    @Test
+    void calibrate_impossibleBudget_keepsFloor() {
+        PasswordEncoder encoder = factory("bcrypt", true, Duration.ofNanos(1)).create();
+
+        assertTrue(encoder.encode("secret").startsWith("{bcrypt}$2a$04$"));
+    }
+
+    // Unprefixed hashes from before the delegating encoder still match
+    @Test
+    void matches_legacyUnprefixedBcrypt() {
+        PasswordEncoder encoder = factory("bcrypt", false, Duration.ofMillis(250)).create();
+        String legacy = new BCryptPasswordEncoder(10).encode("secret");
+
+        assertTrue(encoder.matches("secret", legacy));
+        assertFalse(encoder.matches("wrong", legacy));
+    }
+
+    // Hashes from the other algorithms are accepted
+    @Test
+    void matches_otherAlgorithms() {
+        PasswordEncoder encoder = factory("bcrypt", false, Duration.ofMillis(250)).create();
+        String pbkdf2 = "{pbkdf2}" + Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8().encode("secret");
+        String argon2 = "{argon2}" + new Argon2PasswordEncoder(16, 32, 1, 1024, 1).encode("secret");
+
+        assertTrue(encoder.matches("secret", pbkdf2));
+        assertTrue(encoder.matches("secret", argon2));
+    }
+
+    // Argon2 as the encoding algorithm → calibrated iterations
+    @Test
+    void create_argon2_encodesWithArgon2() {
+        PasswordEncoder encoder = factory("argon2", true, Duration.ofSeconds(10)).create();
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(hash.startsWith("{argon2}$argon2id$"));
+        assertTrue(hash.contains("t=3"));
+        assertTrue(encoder.matches("secret", hash));
+    }
+
+    @Test
+    void unknownAlgorithm_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> factory("md5", false, Duration.ofMillis(250)));
+    }
+
+    // Unprefixed, weaker or over-max hashes are flagged; hashes within [chosen, max] are not
+    @Test
+    void upgradeEncoding_flagsOutdatedHashes() {
+        PasswordEncoder encoder = factory("bcrypt", false, Duration.ofMillis(250)).create();
+
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        assertTrue(encoder.upgradeEncoding("{pbkdf2}" + Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8().encode("secret")));
+        assertTrue(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(7).encode("secret")));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+        assertFalse(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(6).encode("secret")));
+    }
+
+    // Argon2 with other memory or too few iterations is flagged
+    @Test
+    void upgradeEncoding_argon2Parameters() {
+        PasswordEncoder encoder = factory("argon2", false, Duration.ofMillis(250)).create();
+
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+        assertTrue(encoder.upgradeEncoding("{argon2}" + new Argon2PasswordEncoder(16, 32, 1, 2048, 1).encode("secret")));
+        assertTrue(encoder.upgradeEncoding("{argon2}" + new Argon2PasswordEncoder(16, 32, 1, 1024, 4).encode("secret")));
+    }
+}
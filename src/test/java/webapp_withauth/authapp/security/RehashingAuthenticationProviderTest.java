@@ -0,0 +1,89 @@
+package webapp_withauth.authapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import webapp_withauth.authapp.service.PasswordRehashService;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RehashingAuthenticationProviderTest {
+
+    private UserDetailsService userDetailsService;
+    private PasswordEncoder encoder;
+    private PasswordRehashService rehashService;
+    private SimpleMeterRegistry registry;
+    private RehashingAuthenticationProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        userDetailsService = mock(UserDetailsService.class);
+        registry = new SimpleMeterRegistry();
+        encoder = new PasswordEncoderFactory("bcrypt", false, Duration.ofMillis(250), 1, 4, 6, 1, 3, 1024,
+                registry).create();
+        rehashService = mock(PasswordRehashService.class);
+        provider = new RehashingAuthenticationProvider(userDetailsService, encoder, rehashService,
+                new LoginStageTimers(registry));
+    }
+
+    private void storedHash(String hash) {
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(User.withUsername("alice")
+                .password(hash)
+                .roles("USER")
+                .build());
+    }
+
+    // Legacy hash → login succeeds and re-hash is queued
+    @Test
+    void authenticate_outdatedHash_queuesRehash() {
+        storedHash(new BCryptPasswordEncoder(4).encode("secret"));
+
+        provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "secret"));
+
+        verify(rehashService).schedule(any(), eq("secret"));
+    }
+
+    // Current hash → nothing queued
+    @Test
+    void authenticate_currentHash_doesNotQueue() {
+        storedHash(encoder.encode("secret"));
+
+        provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "secret"));
+
+        verifyNoInteractions(rehashService);
+    }
+
+    // Wrong password → nothing queued
+    @Test
+    void authenticate_badPassword_doesNotQueue() {
+        storedHash(new BCryptPasswordEncoder(4).encode("secret"));
+
+        assertThrows(BadCredentialsException.class,
+                () -> provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "wrong")));
+
+        verifyNoInteractions(rehashService);
+    }
+
+    // Lookup and password check are timed as separate login stages
+    @Test
+    void authenticate_recordsLookupAndHashStages() {
+        storedHash(encoder.encode("secret"));
+
+        provider.authenticate(new UsernamePasswordAuthenticationToken("alice", "secret"));
+
+        assertEquals(1, registry.get("auth.login.stage").tag("stage", "lookup").timer().count());
+        assertEquals(1, registry.get("auth.login.stage").tag("stage", "hash").timer().count());
+    }
+}
@@ -0,0 +1,114 @@
+package webapp_withauth.authapp.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import webapp_withauth.authapp.model.JwtSigningKey;
+import webapp_withauth.authapp.repository.JwtSigningKeyRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SigningKeyRingTest {
+
+    private final List<JwtSigningKey> stored = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private SigningKeyRing ring;
+
+    @BeforeEach
+    void setUp() {
+        JwtSigningKeyRepository repo = mock(JwtSigningKeyRepository.class);
+        when(repo.save(any())).thenAnswer(inv -> {
+            JwtSigningKey key = inv.getArgument(0);
+            key.setId((long) stored.size() + 1);
+            stored.add(key);
+            return key;
+        });
+        when(repo.findAllByExpiresAtAfterOrderByCreatedAtAsc(any())).thenAnswer(inv -> {
+            LocalDateTime now = inv.getArgument(0);
+            return stored.stream()
+                    .filter(k -> k.getExpiresAt().isAfter(now))
+                    .sorted(Comparator.comparing(JwtSigningKey::getCreatedAt))
+                    .toList();
+        });
+        when(repo.deleteExpired(any())).thenAnswer(inv -> {
+            LocalDateTime now = inv.getArgument(0);
+            int before = stored.size();
+            stored.removeIf(k -> k.getExpiresAt().isBefore(now));
+            return before - stored.size();
+        });
+
+        ring = new SigningKeyRing(repo, mapper, "supersecurelongenoughsecretkey123456",
+                Duration.ofHours(1), Duration.ofMinutes(30), Duration.ofMinutes(5));
+        ring.init();
+    }
+
+    // First key signs immediately and is published
+    @Test
+    void init_createsActiveKey() throws Exception {
+        SigningKeyRing.ActiveKey active = ring.activeKey();
+
+        assertEquals(1, stored.size());
+        assertEquals(stored.get(0).getKid(), active.kid());
+        assertNotNull(ring.verificationKey(active.kid()));
+
+        JsonNode keys = mapper.readTree(ring.jwks().json()).get("keys");
+        assertEquals(1, keys.size());
+        assertEquals("EC", keys.get(0).get("kty").asText());
+        assertEquals("P-256", keys.get(0).get("crv").asText());
+        assertEquals(active.kid(), keys.get(0).get("kid").asText());
+    }
+
+    // Private keys are never stored in the clear
+    @Test
+    void privateKey_isStoredEncrypted() {
+        String wrapped = stored.get(0).getPrivateKey();
+        byte[] plain = ring.activeKey().privateKey().getEncoded();
+
+        assertNotEquals(java.util.Base64.getEncoder().encodeToString(plain), wrapped);
+    }
+
+    // Rotation publishes the new key first and keeps signing with the old one until the lead passes
+    @Test
+    void rotation_publishesBeforeSigning() throws Exception {
+        String oldKid = ring.activeKey().kid();
+        String oldEtag = ring.jwks().etag();
+
+        ring.rotateIfDue(LocalDateTime.now().plusHours(1).plusMinutes(10));
+
+        assertEquals(2, stored.size());
+        String newKid = stored.get(1).getKid();
+        assertEquals(oldKid, ring.activeKey().kid());
+        assertNotNull(ring.verificationKey(newKid));
+        assertNotNull(ring.verificationKey(oldKid));
+        assertEquals(2, mapper.readTree(ring.jwks().json()).get("keys").size());
+        assertNotEquals(oldEtag, ring.jwks().etag());
+    }
+
+    // Keys past their overlap window are dropped from verification and the JWKS
+    @Test
+    void expiredKeys_areRetired() {
+        String oldKid = ring.activeKey().kid();
+
+        ring.rotateIfDue(LocalDateTime.now().plusHours(3));
+
+        assertNull(ring.verificationKey(oldKid));
+        assertEquals(1, stored.size());
+    }
+
+    // Re-running within the rotation interval does not create keys
+    @Test
+    void rotateIfDue_notDue_isNoOp() {
+        ring.rotateIfDue(LocalDateTime.now().plusMinutes(10));
+
+        assertEquals(1, stored.size());
+    }
+}
@@ -0,0 +1,180 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.repository.EmailOutboxRepository;
+import webapp_withauth.authapp.repository.EmailOutboxRepository.OutboxEmail;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = "email.outbox.retry.max-attempts=2")
+@ActiveProfiles("test")
+public class EmailOutboxDispatcherTest {
+
+    @MockBean
+    private JavaMailSenderImpl mailSender;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private EmailOutboxRepository outbox;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void clearOutbox() {
+        jdbcTemplate.update("DELETE FROM email_outbox");
+    }
+
+    private Map<String, Object> onlyRow() {
+        return jdbcTemplate.queryForMap("SELECT status, attempts, next_attempt_at, last_error FROM email_outbox");
+    }
+
+    // Mail queued in a transaction that rolls back is never sent
+    @Test
+    void send_rolledBack_leavesNothingQueued() {
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.send("a@example.com", "Subject", "Body");
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(0, outbox.countPending());
+        verifyNoInteractions(mailSender);
+    }
+
+    // Committed mail is sent once and removed from the outbox
+    @Test
+    void dispatch_sendsAndDeletes() {
+        emailService.send("a@example.com", "Hello", "Body");
+
+        assertEquals(1, dispatcher.dispatch());
+
+        SimpleMailMessage expected = new SimpleMailMessage();
+        expected.setTo("a@example.com");
+        expected.setSubject("Hello");
+        expected.setText("Body");
+        verify(mailSender).send(new SimpleMailMessage[] {expected});
+        assertEquals(0, outbox.countPending());
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(1, meterRegistry.get("auth.email.send").tag("outcome", "sent").timer().count());
+    }
+
+    // A message the server refuses is retried after a backoff, then given up on after the last attempt
+    @Test
+    void dispatch_rejected_backsOffThenGivesUp() {
+        SimpleMailMessage msg = new SimpleMailMessage();
+        msg.setTo("b@example.com");
+        msg.setSubject("Hello");
+        msg.setText("Body");
+        doThrow(new MailSendException(Map.of(msg, new MessagingException("550 mailbox unavailable"))))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        emailService.send("b@example.com", "Hello", "Body");
+
+        assertEquals(0, dispatcher.dispatch());
+        Map<String, Object> row = onlyRow();
+        assertEquals(EmailOutboxRepository.PENDING, row.get("STATUS"));
+        assertEquals(1, row.get("ATTEMPTS"));
+        assertTrue(((java.sql.Timestamp) row.get("NEXT_ATTEMPT_AT")).toLocalDateTime()
+                .isAfter(LocalDateTime.now().plusSeconds(20)));
+        assertEquals("550 mailbox unavailable", row.get("LAST_ERROR"));
+
+        // Not due yet
+        assertEquals(0, dispatcher.dispatch());
+        verify(mailSender, times(1)).send(any(SimpleMailMessage[].class));
+
+        jdbcTemplate.update("UPDATE email_outbox SET next_attempt_at = ?", LocalDateTime.now().minusSeconds(1));
+        dispatcher.dispatch();
+        assertEquals(EmailOutboxRepository.FAILED, onlyRow().get("STATUS"));
+        assertEquals(0, outbox.countPending());
+    }
+
+    // A failed session hands the batch back without using up an attempt
+    @Test
+    void dispatch_sessionFailure_releasesWithoutCountingAttempt() {
+        SimpleMailMessage msg = new SimpleMailMessage();
+        msg.setTo("d@example.com");
+        msg.setSubject("Hello");
+        msg.setText("Body");
+        MessagingException refused = new MessagingException("Connection refused");
+        doThrow(new MailSendException("Mail server connection failed", refused, Map.of(msg, refused)))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        emailService.send("d@example.com", "Hello", "Body");
+
+        assertEquals(0, dispatcher.dispatch());
+        Map<String, Object> row = onlyRow();
+        assertEquals(EmailOutboxRepository.PENDING, row.get("STATUS"));
+        assertEquals(0, row.get("ATTEMPTS"));
+    }
+
+    // A second claim does not wait on rows another claim holds, and never gets them. H2 locks every
+    // row the ordered scan reads, so only PostgreSQL hands the second claim the remaining rows.
+    @Test
+    void claimDue_skipsRowsLockedByAnotherClaim() {
+        for (int i = 0; i < 4; i++) {
+            emailService.send("c" + i + "@example.com", "Hello", "Body");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TransactionTemplate separate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        separate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+        separate.setTimeout(5);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<OutboxEmail> first = outbox.claimDue(now, now.plusMinutes(2), 2);
+            assertEquals(2, first.size());
+            List<OutboxEmail> second = separate.execute(s -> outbox.claimDue(now, now.plusMinutes(2), 4));
+            assertTrue(second.stream().noneMatch(e -> first.stream().anyMatch(f -> f.id() == e.id())));
+        });
+
+        // Once the first claim commits, its rows are leased and the rest are free
+        List<OutboxEmail> rest = outbox.claimDue(now, now.plusMinutes(2), 4);
+        assertTrue(rest.size() <= 2);
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox WHERE attempts = 1", Integer.class));
+    }
+
+    // Backoff doubles per attempt up to the cap
+    @Test
+    void backoff_doublesAndCaps() {
+        assertEquals(Duration.ofSeconds(30), dispatcher.backoff(1));
+        assertEquals(Duration.ofSeconds(60), dispatcher.backoff(2));
+        assertEquals(Duration.ofMinutes(30), dispatcher.backoff(10));
+    }
+
+    // The claim outlasts a batch whose every message waits out the SMTP timeouts
+    @Test
+    void claimTimeout_coversWorstCaseBatch() {
+        assertEquals(Duration.ofMinutes(2), EmailOutboxDispatcher.claimTimeout(Duration.ofMinutes(2), 20,
+                Duration.ofSeconds(5)));
+        assertEquals(Duration.ofSeconds(500), EmailOutboxDispatcher.claimTimeout(Duration.ofMinutes(2), 20,
+                Duration.ofSeconds(25)));
+    }
+}
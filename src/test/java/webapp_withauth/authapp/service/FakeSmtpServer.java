@@ -0,0 +1,139 @@
+package webapp_withauth.authapp.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an SMTP server, on a loopback port, to send mail through the real
+ * {@code JavaMailSenderImpl}. Records every accepted message's recipient and counts connections.
+ * Recipients containing "reject" are refused with 550.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    enum Mode {
+        /** Normal SMTP */
+        ACCEPT,
+        /** Greets with 421 and hangs up, like a server shedding load */
+        UNAVAILABLE,
+        /** Accepts the connection but never says anything */
+        SILENT,
+        /** Normal SMTP up to the end of the message body, then never answers it */
+        STALL_AFTER_DATA
+    }
+
+    private final ServerSocket serverSocket;
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile Mode mode = Mode.ACCEPT;
+
+    FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "fake-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    void mode(Mode mode) {
+        this.mode = mode;
+    }
+
+    List<String> recipients() {
+        return recipients;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    void reset() {
+        recipients.clear();
+        connections.set(0);
+        mode = Mode.ACCEPT;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread session = new Thread(() -> serve(socket), "fake-smtp-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            switch (mode) {
+                case SILENT -> {
+                    in.read();
+                    return;
+                }
+                case UNAVAILABLE -> {
+                    reply(out, "421 service not available");
+                    return;
+                }
+                case ACCEPT, STALL_AFTER_DATA -> reply(out, "220 fake ESMTP");
+            }
+            String recipient = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(out, "250 fake");
+                } else if (command.startsWith("RCPT TO:")) {
+                    recipient = line.substring(8).replaceAll("[<> ]", "");
+                    reply(out, recipient.contains("reject") ? "550 mailbox unavailable" : "250 OK");
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 end with .");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // message content is not kept
+                    }
+                    if (mode == Mode.STALL_AFTER_DATA) {
+                        // Wait for the client to give up and hang up
+                        in.read();
+                        return;
+                    }
+                    recipients.add(recipient);
+                    reply(out, "250 queued");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    // MAIL FROM, RSET, NOOP
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private static void reply(PrintWriter out, String line) {
+        out.print(line + "\r\n");
+        out.flush();
+    }
+}
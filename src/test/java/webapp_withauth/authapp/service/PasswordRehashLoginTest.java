@@ -0,0 +1,53 @@
+package webapp_withauth.authapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import webapp_withauth.authapp.model.User;
+import webapp_withauth.authapp.repository.UserRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The whole login path: ProviderManager erases the principal's credentials before the flush runs
+@SpringBootTest(properties = "password-hashing.rehash.flush-interval=1h")
+@ActiveProfiles("test")
+public class PasswordRehashLoginTest {
+
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Autowired
+    private PasswordRehashService rehashService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    // Login with an outdated hash → the stored row is re-hashed on the next flush
+    @Test
+    void login_outdatedHash_rowIsRehashed() {
+        String legacyHash = new BCryptPasswordEncoder(4).encode("secret");
+        userRepository.save(User.builder()
+                .username("rehashuser")
+                .email("rehash@example.com")
+                .password(legacyHash)
+                .role("USER")
+                .enabled(true)
+                .build());
+
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("rehashuser", "secret"));
+        rehashService.flush();
+
+        String stored = userRepository.findByUsername("rehashuser").orElseThrow().getPassword();
+        assertNotEquals(legacyHash, stored);
+        assertFalse(passwordEncoder.upgradeEncoding(stored));
+        assertTrue(passwordEncoder.matches("secret", stored));
+    }
+}
@@ -0,0 +1,107 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PasswordRehashServiceTest {
+
+    private UserDetailsPasswordService passwordService;
+    private PasswordEncoder encoder;
+    private TransactionTemplate transactionTemplate;
+    private SimpleMeterRegistry registry;
+    private PasswordRehashService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        passwordService = mock(UserDetailsPasswordService.class);
+        encoder = mock(PasswordEncoder.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(inv -> {
+            ((Consumer<TransactionStatus>) inv.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(encoder.encode(any())).thenAnswer(inv -> "new-" + inv.getArgument(0));
+        when(passwordService.updatePassword(any(), any())).thenAnswer(inv -> User.withUserDetails(inv.getArgument(0))
+                .password(inv.getArgument(1))
+                .build());
+        registry = new SimpleMeterRegistry();
+        service = new PasswordRehashService(passwordService, encoder, transactionTemplate, 2, 3, registry);
+    }
+
+    private UserDetails user(String username) {
+        return User.withUsername(username).password("old").roles("USER").build();
+    }
+
+    private double count(String outcome) {
+        return registry.get("auth.password.rehash").tag("outcome", outcome).counter().count();
+    }
+
+    // Repeated logins by one user → one hash, one write
+    @Test
+    void schedule_sameUser_coalesces() {
+        service.schedule(user("alice"), "pw");
+        service.schedule(user("alice"), "pw");
+        service.schedule(user("alice"), "pw");
+
+        service.flush();
+
+        verify(encoder, times(1)).encode("pw");
+        verify(passwordService, times(1)).updatePassword(any(), eq("new-pw"));
+        assertEquals(2, count("coalesced"));
+        assertEquals(1, count("updated"));
+    }
+
+    // Flush drains everything in batch-sized transactions
+    @Test
+    void flush_writesInBatches() {
+        service.schedule(user("a"), "pw");
+        service.schedule(user("b"), "pw");
+        service.schedule(user("c"), "pw");
+
+        service.flush();
+
+        verify(transactionTemplate, times(2)).executeWithoutResult(any());
+        verify(passwordService, times(3)).updatePassword(any(), any());
+        assertEquals(0, service.pendingCount());
+    }
+
+    // Queue full → new users dropped until the next flush
+    @Test
+    void schedule_queueFull_drops() {
+        service.schedule(user("a"), "pw");
+        service.schedule(user("b"), "pw");
+        service.schedule(user("c"), "pw");
+        service.schedule(user("d"), "pw");
+
+        assertEquals(3, service.pendingCount());
+        assertEquals(1, count("dropped"));
+    }
+
+    // Password changed before the flush → counted as skipped
+    @Test
+    void flush_passwordChanged_countsSkipped() {
+        UserDetails alice = user("alice");
+        doReturn(alice).when(passwordService).updatePassword(eq(alice), any());
+        service.schedule(alice, "pw");
+
+        service.flush();
+
+        assertEquals(1, count("skipped"));
+        assertEquals(0, count("updated"));
+    }
+}
@@ -0,0 +1,171 @@
+package webapp_withauth.authapp.service;
+
+import io.jsonwebtoken.MalformedJwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.jobs.RefreshTokenDigestMigration;
+import webapp_withauth.authapp.model.RefreshToken;
+import webapp_withauth.authapp.repository.RefreshTokenRepository;
+import webapp_withauth.authapp.security.AccessTokenRevocations;
+import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.service.RefreshTokenService.InvalidRefreshTokenException;
+import webapp_withauth.authapp.service.RefreshTokenService.RotationInProgressException;
+import webapp_withauth.authapp.service.RefreshTokenService.TokenPair;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RefreshTokenServiceTest {
+
+    private JwtService jwtService;
+    private RefreshTokenRepository repo;
+    private SimpleMeterRegistry registry;
+    private RefreshTokenService service;
+    private ExecutorService callers;
+
+    private final CountDownLatch leaderEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseLeader = new CountDownLatch(1);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        repo = mock(RefreshTokenRepository.class);
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenReturn(User.withUsername("alice").password("pw").roles("USER").build());
+        when(jwtService.isTokenValid(any(), any(), any())).thenReturn(true);
+        when(jwtService.generateAccessToken(any())).thenReturn("access.1");
+        when(jwtService.generateRefreshToken(any())).thenReturn("refresh.1");
+        when(repo.findActiveByDigestAndDevice(any(), any(), any())).thenReturn(Optional.of(RefreshToken.builder()
+                .id(1L)
+                .username("alice")
+                .familyId("family-1")
+                .deviceId("device-1")
+                .expiry(LocalDateTime.now().plusDays(1))
+                .version(0L)
+                .build()));
+        when(repo.markRotated(eq(1L), eq(0L), any())).thenReturn(1);
+
+        registry = new SimpleMeterRegistry();
+        service = new RefreshTokenService(repo, jwtService, userDetailsService, mock(RefreshTokenDigestMigration.class),
+                mock(AccessTokenRevocations.class), transactionTemplate, Duration.ofSeconds(10), 100,
+                Duration.ofSeconds(1), registry);
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    private double count(String outcome) {
+        return registry.get("auth.refresh.rotation").tag("outcome", outcome).counter().count();
+    }
+
+    // Blocks the first rotation inside JWT parsing until the test lets it go
+    private void holdLeader(Callable<String> then) {
+        when(jwtService.extractUsername("token")).thenAnswer(inv -> {
+            leaderEntered.countDown();
+            releaseLeader.await(5, TimeUnit.SECONDS);
+            return then.call();
+        });
+    }
+
+    private Future<TokenPair> refreshAsync() {
+        return callers.submit(() -> service.rotate("token", "device-1", "127.0.0.1", "JUnit"));
+    }
+
+    private void awaitCoalesced() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count("coalesced") < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    // A duplicate in flight waits for the first rotation and gets its pair; the work runs once
+    @Test
+    void rotate_duplicateInFlight_sharesResult() throws Exception {
+        holdLeader(() -> "alice");
+
+        Future<TokenPair> first = refreshAsync();
+        assertTrue(leaderEntered.await(5, TimeUnit.SECONDS));
+        Future<TokenPair> second = refreshAsync();
+        awaitCoalesced();
+        releaseLeader.countDown();
+
+        assertEquals(new TokenPair("access.1", "refresh.1"), first.get(5, TimeUnit.SECONDS));
+        assertEquals(first.get(), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, count("coalesced"));
+        verify(jwtService, times(1)).extractUsername("token");
+        verify(jwtService, times(1)).generateRefreshToken(any());
+        verify(repo, times(1)).save(any());
+    }
+
+    // A failed rotation fails its waiters too
+    @Test
+    void rotate_duplicateInFlight_sharesFailure() throws Exception {
+        holdLeader(() -> {
+            throw new MalformedJwtException("bad");
+        });
+
+        Future<TokenPair> first = refreshAsync();
+        assertTrue(leaderEntered.await(5, TimeUnit.SECONDS));
+        Future<TokenPair> second = refreshAsync();
+        awaitCoalesced();
+        releaseLeader.countDown();
+
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        ExecutionException waiterError = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InvalidRefreshTokenException.class, leaderError.getCause());
+        assertInstanceOf(InvalidRefreshTokenException.class, waiterError.getCause());
+        verify(repo, never()).save(any());
+    }
+
+    // A rotation stuck past the coalesce timeout fails its waiters with a retryable error, not a hang
+    @Test
+    void rotate_duplicateInFlight_stuckLeader_waiterTimesOut() throws Exception {
+        holdLeader(() -> "alice");
+
+        Future<TokenPair> first = refreshAsync();
+        assertTrue(leaderEntered.await(5, TimeUnit.SECONDS));
+        Future<TokenPair> second = refreshAsync();
+
+        ExecutionException waiterError = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RotationInProgressException.class, waiterError.getCause());
+        assertEquals(1, count("coalesce_timeout"));
+
+        releaseLeader.countDown();
+        assertEquals(new TokenPair("access.1", "refresh.1"), first.get(5, TimeUnit.SECONDS));
+    }
+
+    // Once a rotation is done, a repeat within the grace period is served from the cache
+    @Test
+    void rotate_afterCompletion_servedFromGraceCache() {
+        when(jwtService.extractUsername("token")).thenReturn("alice");
+
+        TokenPair first = service.rotate("token", "device-1", "127.0.0.1", "JUnit");
+        TokenPair second = service.rotate("token", "device-1", "127.0.0.1", "JUnit");
+
+        assertEquals(first, second);
+        assertEquals(1, count("grace"));
+        assertEquals(0, count("coalesced"));
+        verify(jwtService, times(1)).extractUsername("token");
+    }
+}
@@ -0,0 +1,75 @@
+package webapp_withauth.authapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import webapp_withauth.authapp.jobs.RefreshTokenDigestMigration;
+import webapp_withauth.authapp.model.User;
+import webapp_withauth.authapp.repository.RefreshTokenRepository;
+import webapp_withauth.authapp.repository.UserRepository;
+import webapp_withauth.authapp.security.AccessTokenRevocations;
+import webapp_withauth.authapp.security.JwtService;
+import webapp_withauth.authapp.security.TokenDigests;
+import webapp_withauth.authapp.service.RefreshTokenService.TokenPair;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class RefreshTokenSiblingRotationTest {
+
+    @Autowired
+    private RefreshTokenRepository repo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private RefreshTokenDigestMigration digestMigration;
+
+    @Autowired
+    private AccessTokenRevocations accessTokenRevocations;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // A replica with its own grace cache, sharing the database
+    private RefreshTokenService node() {
+        return new RefreshTokenService(repo, jwtService, userDetailsService, digestMigration, accessTokenRevocations,
+                transactionTemplate, Duration.ofSeconds(10), 100, Duration.ofSeconds(2),
+                new SimpleMeterRegistry());
+    }
+
+    // The winner on one node and the sibling on another sign for the same user within the same second;
+    // their refresh tokens must still differ, or the sibling's insert hits the unique token_digest
+    @Test
+    void rotate_sameTokenTwiceInOneSecond_onTwoNodes_issuesDistinctTokens() {
+        userRepo.save(User.builder().username("sibling").email("sibling@example.com")
+                .password("{noop}pw").role("USER").enabled(true).build());
+        UserDetails user = userDetailsService.loadUserByUsername("sibling");
+        String login = jwtService.generateRefreshToken(user);
+        RefreshTokenService a = node();
+        RefreshTokenService b = node();
+        a.startFamily("sibling", login, "device-1", "127.0.0.1", "JUnit");
+
+        TokenPair winner = a.rotate(login, "device-1", "127.0.0.1", "JUnit");
+        TokenPair sibling = b.rotate(login, "device-1", "127.0.0.1", "JUnit");
+
+        assertNotEquals(winner.refreshToken(), sibling.refreshToken());
+        assertTrue(repo.findByTokenDigest(TokenDigests.sha256Hex(winner.refreshToken())).isPresent());
+        assertTrue(repo.findByTokenDigest(TokenDigests.sha256Hex(sibling.refreshToken())).isPresent());
+    }
+}
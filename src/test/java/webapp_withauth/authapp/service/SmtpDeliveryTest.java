@@ -0,0 +1,166 @@
+package webapp_withauth.authapp.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import webapp_withauth.authapp.repository.EmailOutboxRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The real JavaMailSenderImpl against FakeSmtpServer
+@SpringBootTest(properties = {
+        "spring.mail.host=127.0.0.1",
+        "spring.mail.username=",
+        "spring.mail.password=",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "spring.mail.properties.mail.smtp.from=noreply@example.com",
+        "spring.mail.properties.mail.smtp.connectiontimeout=500",
+        "spring.mail.properties.mail.smtp.timeout=500",
+        "spring.mail.properties.mail.smtp.writetimeout=500",
+        "email.outbox.batch-size=10",
+        "email.smtp.circuit-breaker.failure-threshold=2",
+        "email.smtp.circuit-breaker.open-duration=300ms"
+})
+@ActiveProfiles("test")
+public class SmtpDeliveryTest {
+
+    private static final FakeSmtpServer smtp;
+
+    static {
+        try {
+            smtp = new FakeSmtpServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void smtpPort(DynamicPropertyRegistry registry) {
+        registry.add("spring.mail.port", smtp::port);
+    }
+
+    @AfterAll
+    static void stopSmtp() throws IOException {
+        smtp.close();
+    }
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private EmailOutboxRepository outbox;
+
+    @Autowired
+    private SmtpCircuitBreaker breaker;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void reset() {
+        jdbcTemplate.update("DELETE FROM email_outbox");
+        smtp.reset();
+        breaker.recordSuccess();
+    }
+
+    private void queue(String... recipients) {
+        for (String to : recipients) {
+            emailService.send(to, "Hello", "Body");
+        }
+    }
+
+    // A batch goes out over one connection
+    @Test
+    void dispatch_sendsBatchOverOneConnection() {
+        queue("a1@example.com", "a2@example.com", "a3@example.com", "a4@example.com", "a5@example.com");
+
+        assertEquals(5, dispatcher.dispatch());
+
+        assertEquals(1, smtp.connections());
+        assertEquals(List.of("a1@example.com", "a2@example.com", "a3@example.com", "a4@example.com",
+                "a5@example.com"), smtp.recipients());
+        assertEquals(0, outbox.countPending());
+    }
+
+    // A refused recipient does not stop the rest of the batch and is retried later
+    @Test
+    void dispatch_rejectedRecipient_restOfBatchSent() {
+        queue("b1@example.com", "reject@example.com", "b3@example.com");
+
+        assertEquals(2, dispatcher.dispatch());
+
+        assertEquals(List.of("b1@example.com", "b3@example.com"), smtp.recipients());
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT attempts FROM email_outbox WHERE recipient = 'reject@example.com'", Integer.class));
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    // Failing sessions open the breaker; mail waits in the outbox until a trial session succeeds
+    @Test
+    void dispatch_serverDown_opensBreakerAndBuffers() throws InterruptedException {
+        smtp.mode(FakeSmtpServer.Mode.UNAVAILABLE);
+        queue("c1@example.com", "c2@example.com");
+
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(SmtpCircuitBreaker.State.OPEN, breaker.state());
+        int connectionsWhenOpened = smtp.connections();
+
+        // Open: nothing is claimed or attempted
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(connectionsWhenOpened, smtp.connections());
+        assertEquals(2, outbox.countPending());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT MAX(attempts) FROM email_outbox", Integer.class));
+
+        smtp.mode(FakeSmtpServer.Mode.ACCEPT);
+        Thread.sleep(400);
+        assertEquals(2, dispatcher.dispatch());
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, outbox.countPending());
+    }
+
+    // A server that never answers costs the read timeout, not a stuck thread
+    @Test
+    void dispatch_silentServer_timesOut() {
+        smtp.mode(FakeSmtpServer.Mode.SILENT);
+        queue("d1@example.com");
+
+        long start = System.nanoTime();
+        assertEquals(0, dispatcher.dispatch());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 3000, "dispatch took " + elapsedMillis + " ms");
+        assertEquals(1, outbox.countPending());
+    }
+
+    // A server that takes the message and never confirms it: the batch goes back without using up
+    // attempts and counts against the breaker
+    @Test
+    void dispatch_stallAfterData_releasesBatchAndOpensBreaker() {
+        smtp.mode(FakeSmtpServer.Mode.STALL_AFTER_DATA);
+        queue("e1@example.com", "e2@example.com");
+
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(2, outbox.countPending());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT MAX(attempts) FROM email_outbox", Integer.class));
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.state());
+
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(SmtpCircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(smtp.recipients().isEmpty());
+    }
+}
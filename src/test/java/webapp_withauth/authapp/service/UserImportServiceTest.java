@@ -0,0 +1,73 @@
+package webapp_withauth.authapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import webapp_withauth.authapp.repository.UserRepository;
+import webapp_withauth.authapp.service.UserImportService.Format;
+import webapp_withauth.authapp.service.UserImportService.Result;
+import webapp_withauth.authapp.service.UserImportService.Row;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "import.users.chunk-size=2")
+@ActiveProfiles("test")
+public class UserImportServiceTest {
+
+    private static final String HASH = "{bcrypt}$2a$10$7eqJtq98hPqEX7fNZaFWoO4Q13w9PO9uCzxeV6rV5pD4dIaIRZXsy";
+
+    @Autowired
+    private UserImportService importService;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    private Result importNdjson(String body) {
+        return importService.importUsers(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Format.NDJSON);
+    }
+
+    // A row repeating one from an earlier, already committed chunk is a duplicate
+    @Test
+    void importUsers_duplicateAcrossChunks_skipped() {
+        Result result = importNdjson("""
+                {"username":"chunk1","email":"chunk1@example.com","passwordHash":"%1$s"}
+                {"username":"chunk2","email":"chunk2@example.com","passwordHash":"%1$s"}
+                {"username":"chunk3","email":"chunk3@example.com","passwordHash":"%1$s"}
+                {"username":"chunk1","email":"chunk4@example.com","passwordHash":"%1$s"}
+                {"username":"chunk5","email":"chunk5@example.com","passwordHash":"%1$s"}
+                """.formatted(HASH));
+
+        assertEquals(4, result.imported());
+        assertEquals(1, result.duplicates());
+        assertEquals(List.of("line 4: username or email already exists"), result.problems());
+        assertEquals("chunk1@example.com", userRepo.findByUsername("chunk1").orElseThrow().getEmail());
+    }
+
+    // Defaults are filled in; a row needs exactly one kind of password
+    @Test
+    void validate_defaultsAndPasswordRules() {
+        Row row = UserImportService.validate(new Row(" alice ", "alice@example.com", null, HASH, null, null));
+        assertEquals("alice", row.username());
+        assertEquals("USER", row.role());
+        assertTrue(row.enabled());
+
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.validate(
+                new Row("bob", "bob@example.com", "plain", HASH, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.validate(
+                new Row("bob", "bob@example.com", null, "md5:abc", null, null)));
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.validate(
+                new Row("bob", "bob@example.com", "plain", null, "admin", null)));
+    }
+
+    // Quoted CSV fields may hold commas and doubled quotes
+    @Test
+    void splitCsv_handlesQuotes() {
+        assertEquals(List.of("a", "b,c", "say \"hi\"", ""), UserImportService.splitCsv("a,\"b,c\",\"say \"\"hi\"\"\","));
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.splitCsv("a,\"open"));
+    }
+}
@@ -1,5 +1,6 @@
 package webapp_withauth.authapp.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -7,6 +8,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import webapp_withauth.authapp.model.User;
 import webapp_withauth.authapp.repository.UserRepository;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -15,12 +17,15 @@ import static org.mockito.Mockito.*;
 public class UserServiceTest {
 
     private UserRepository userRepository;
+    private UserDetailsCache userDetailsCache;
     private UserService userService;
 
     @BeforeEach
     void setUp() {
         userRepository = mock(UserRepository.class);
-        userService = new UserService(userRepository);
+        userDetailsCache = new UserDetailsCache(Duration.ofMinutes(1), Duration.ofSeconds(10), 100,
+                new SimpleMeterRegistry());
+        userService = new UserService(userRepository, userDetailsCache);
     }
 
     // Load by valid username (enabled) → UserDetails
@@ -79,4 +84,106 @@ public class UserServiceTest {
 
         assertThrows(IllegalStateException.class, () -> userService.loadUserByUsername("noroleuser"));
     }
-}
\ No newline at end of file
+
+    // Repeated loads → one repository query
+    @Test
+    void loadUserByUsername_repeatedCalls_hitCache() {
+        User user = User.builder()
+                .username("cacheduser")
+                .password("encodedpass")
+                .role("USER")
+                .enabled(true)
+                .build();
+
+        when(userRepository.findByUsername("cacheduser")).thenReturn(Optional.of(user));
+
+        userService.loadUserByUsername("cacheduser");
+        UserDetails second = userService.loadUserByUsername("cacheduser");
+
+        assertEquals("encodedpass", second.getPassword());
+        verify(userRepository, times(1)).findByUsername("cacheduser");
+    }
+
+    // Erasing credentials on a returned instance must not corrupt the cached entry
+    @Test
+    void loadUserByUsername_returnsCopies() {
+        User user = User.builder()
+                .username("copyuser")
+                .password("encodedpass")
+                .role("USER")
+                .enabled(true)
+                .build();
+
+        when(userRepository.findByUsername("copyuser")).thenReturn(Optional.of(user));
+
+        UserDetails first = userService.loadUserByUsername("copyuser");
+        ((org.springframework.security.core.CredentialsContainer) first).eraseCredentials();
+
+        assertEquals("encodedpass", userService.loadUserByUsername("copyuser").getPassword());
+    }
+
+    // Unknown usernames are cached as misses
+    @Test
+    void loadUserByUsername_unknownUser_isNegativelyCached() {
+        when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByUsername("ghost"));
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByUsername("ghost"));
+
+        verify(userRepository, times(1)).findByUsername("ghost");
+    }
+
+    // Eviction forces a fresh lookup (e.g. after verification or a password reset)
+    @Test
+    void evict_forcesReload() {
+        User user = User.builder()
+                .username("evicteduser")
+                .password("newhash")
+                .role("USER")
+                .enabled(true)
+                .build();
+
+        when(userRepository.findByUsername("evicteduser"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(user));
+
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByUsername("evicteduser"));
+        userService.evict("evicteduser");
+
+        assertEquals("newhash", userService.loadUserByUsername("evicteduser").getPassword());
+    }
+
+    // Stored hash unchanged since login → re-hash written and cache evicted
+    @Test
+    void updatePassword_hashUnchanged_storesNewHash() {
+        User user = User.builder()
+                .username("rehashuser")
+                .password("oldhash")
+                .role("USER")
+                .enabled(true)
+                .build();
+        when(userRepository.findByUsername("rehashuser")).thenReturn(Optional.of(user));
+        UserDetails loaded = userService.loadUserByUsername("rehashuser");
+        when(userRepository.updatePasswordIfUnchanged("rehashuser", "oldhash", "newhash")).thenReturn(1);
+
+        UserDetails result = userService.updatePassword(loaded, "newhash");
+        userService.loadUserByUsername("rehashuser");
+
+        assertEquals("newhash", result.getPassword());
+        verify(userRepository, times(2)).findByUsername("rehashuser");
+    }
+
+    // Password changed in between → nothing overwritten
+    @Test
+    void updatePassword_hashChanged_keepsStoredHash() {
+        UserDetails loaded = org.springframework.security.core.userdetails.User.withUsername("rehashuser")
+                .password("oldhash")
+                .roles("USER")
+                .build();
+        when(userRepository.updatePasswordIfUnchanged("rehashuser", "oldhash", "newhash")).thenReturn(0);
+
+        UserDetails result = userService.updatePassword(loaded, "newhash");
+
+        assertSame(loaded, result);
+    }
+}